@@ -0,0 +1,568 @@
+package structures;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * An HTML DOM tree kept in parallel int arrays instead of one TagNode object per node.
+ * Node n has its first child, next sibling and parent in <code>first[n]</code>,
+ * <code>sibling[n]</code> and <code>parent[n]</code>, with -1 for none. An element has
+ * the id of its tag, in a {@link TagTable} that can be shared between trees, in
+ * <code>name[n]</code>. The text of all text nodes is kept in one arena; a text node
+ * has -1 minus the offset of its text in <code>name[n]</code>, and, since it has no
+ * children, the length of its text in <code>first[n]</code>.
+ *
+ * The operations are those of {@link Tree}. As there, an
+ * element without children is written out as text, its tag name.
+ *
+ */
+public class CompactTree {
+
+	/**
+	 * The text of all text nodes. Characters are kept one byte each until one that does
+	 * not fit in a byte is added, as most HTML text is Latin-1.
+	 */
+	static class Arena implements CharSequence {
+		private byte[] narrow = new byte[1024];
+		private char[] wide;
+		private int length;
+
+		/**
+		 * Adds text to the end of the arena
+		 *
+		 * @param text The text
+		 * @return Offset of the text in the arena
+		 */
+		int append(String text) {
+			int start = length, n = text.length();
+			if (wide == null) {
+				for (int i = 0; i < n; i++) {
+					if (text.charAt(i) > 0xff) {
+						widen();
+						break;
+					}
+				}
+			}
+			if (wide != null) {
+				if (length + n > wide.length) {
+					wide = Arrays.copyOf(wide, Math.max(2 * wide.length, length + n));
+				}
+				text.getChars(0, n, wide, length);
+			} else {
+				if (length + n > narrow.length) {
+					narrow = Arrays.copyOf(narrow, Math.max(2 * narrow.length, length + n));
+				}
+				for (int i = 0; i < n; i++) {
+					narrow[length + i] = (byte) text.charAt(i);
+				}
+			}
+			length += n;
+			return start;
+		}
+
+		private void widen() {
+			wide = new char[Math.max(narrow.length, 16)];
+			for (int i = 0; i < length; i++) {
+				wide[i] = (char) (narrow[i] & 0xff);
+			}
+			narrow = null;
+		}
+
+		/**
+		 * Drops the room kept for more text
+		 */
+		void trim() {
+			if (wide != null) {
+				wide = Arrays.copyOf(wide, length);
+			} else {
+				narrow = Arrays.copyOf(narrow, length);
+			}
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public char charAt(int index) {
+			return wide != null ? wide[index] : (char) (narrow[index] & 0xff);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			StringBuilder sb = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				sb.append(charAt(i));
+			}
+			return sb.toString();
+		}
+
+		public String toString() {
+			return subSequence(0, length).toString();
+		}
+	}
+
+	/**
+	 * Builds the tree from the lines of a document
+	 */
+	private class Loader implements TreeBuilder.Handler {
+		/**
+		 * Open elements, innermost last, and the last child of each
+		 */
+		private int[] open = new int[16];
+		private int[] last = new int[16];
+		private int depth;
+
+		Loader() {
+			root = node(tags.id("html"), -1, -1);
+			open[0] = root;
+			last[0] = -1;
+			depth = 1;
+		}
+
+		public void startTag(String tag) {
+			int node = append(node(tags.id(tag), -1, -1));
+			if (depth == open.length) {
+				open = Arrays.copyOf(open, 2 * depth);
+				last = Arrays.copyOf(last, 2 * depth);
+			}
+			open[depth] = node;
+			last[depth++] = -1;
+		}
+
+		public void endTag() {
+			if (depth == 0) {
+				throw new NoSuchElementException("Closing tag with no open element");
+			}
+			depth--;
+		}
+
+		public void text(String text) {
+			append(node(-1 - arena.append(text), text.length(), -1));
+		}
+
+		private int append(int node) {
+			if (depth == 0) {
+				throw new NoSuchElementException("Content after the html element was closed");
+			}
+			int top = depth - 1;
+			parent[node] = open[top];
+			if (last[top] < 0) {
+				first[open[top]] = node;
+			} else {
+				sibling[last[top]] = node;
+			}
+			last[top] = node;
+			return node;
+		}
+	}
+
+	/**
+	 * Scanner used to read input HTML file when building the tree
+	 */
+	Scanner sc;
+
+	private final TagTable tags;
+
+	private int[] first = new int[1024];
+	private int[] sibling = new int[1024];
+	private int[] parent = new int[1024];
+	private int[] name = new int[1024];
+	private int size;
+	private final Arena arena = new Arena();
+
+	/**
+	 * Whether a document is being loaded, during which the columns double as they fill
+	 */
+	private boolean loading;
+
+	/**
+	 * Root node, or -1 if the tree has not been built
+	 */
+	int root = -1;
+
+	/**
+	 * Initializes this tree object with scanner for input HTML file, and a tag table of
+	 * its own
+	 *
+	 * @param sc Scanner for input HTML file
+	 */
+	public CompactTree(Scanner sc) {
+		this(sc, new TagTable());
+	}
+
+	/**
+	 * Initializes this tree object with scanner for input HTML file
+	 *
+	 * @param sc Scanner for input HTML file
+	 * @param tags Table that tags are interned in
+	 */
+	public CompactTree(Scanner sc, TagTable tags) {
+		this.sc = sc;
+		this.tags = tags;
+	}
+
+	/**
+	 * Builds the DOM tree from input HTML file, through scanner passed in to the
+	 * constructor.
+	 */
+	public void build() {
+		clear();
+		TreeBuilder builder = new TreeBuilder(new Loader(), tags);
+		while (sc.hasNextLine()) {
+			builder.line(sc.nextLine());
+		}
+		trim();
+	}
+
+	/**
+	 * Builds the DOM tree from a reader instead of the scanner.
+	 *
+	 * @param in The HTML input - not closed
+	 * @throws IOException If the input cannot be read
+	 */
+	public void build(Reader in) throws IOException {
+		clear();
+		new TreeBuilder(new Loader(), tags).parse(in);
+		trim();
+	}
+
+	private void clear() {
+		size = 0;
+		arena.length = 0;
+		root = -1;
+		loading = true;
+	}
+
+	/**
+	 * Drops the room kept for more nodes while loading, down to the headroom kept for
+	 * edits
+	 */
+	private void trim() {
+		int capacity = size + headroom(size);
+		first = Arrays.copyOf(first, capacity);
+		sibling = Arrays.copyOf(sibling, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		name = Arrays.copyOf(name, capacity);
+		arena.trim();
+		loading = false;
+	}
+
+	/**
+	 * Returns the room for more nodes kept once a tree is built, which is also what the
+	 * columns grow by when an edit fills them: edits add a few nodes at a time, and
+	 * doubling every column for them would give back most of the memory saved.
+	 */
+	private static int headroom(int size) {
+		return Math.max(16, size >>> 4);
+	}
+
+	/**
+	 * @return Number of nodes, including nodes removed from the tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Table that tags are interned in
+	 */
+	public TagTable tags() {
+		return tags;
+	}
+
+	/**
+	 * Adds a node with no parent or sibling
+	 */
+	private int node(int name, int first, int sibling) {
+		if (size == this.first.length) {
+			int capacity = loading ? Math.max(16, 2 * size) : size + headroom(size);
+			this.first = Arrays.copyOf(this.first, capacity);
+			this.sibling = Arrays.copyOf(this.sibling, capacity);
+			this.parent = Arrays.copyOf(this.parent, capacity);
+			this.name = Arrays.copyOf(this.name, capacity);
+		}
+		this.name[size] = name;
+		this.first[size] = first;
+		this.sibling[size] = sibling;
+		this.parent[size] = -1;
+		return size++;
+	}
+
+	/**
+	 * Whether a node is an element with children, with the given tag
+	 */
+	private boolean isElement(int node, int tag) {
+		return name[node] == tag && first[node] >= 0;
+	}
+
+	private boolean hasChildren(int node) {
+		return name[node] >= 0 && first[node] >= 0;
+	}
+
+	/**
+	 * Replaces all occurrences of an old tag in the DOM tree with a new tag
+	 *
+	 * @param oldTag Old tag
+	 * @param newTag Replacement tag
+	 */
+	public void replaceTag(String oldTag, String newTag) {
+		int from = tags.lookup(oldTag);
+		if (root < 0 || from < 0) {
+			return;
+		}
+		int to = tags.id(newTag);
+		// every element is in the columns, so no walk is needed
+		for (int node = 0; node < size; node++) {
+			if (isElement(node, from)) {
+				name[node] = to;
+			}
+		}
+	}
+
+	/**
+	 * Boldfaces every column of the given row of the table in the DOM tree. The boldface
+	 * (b) tag appears directly under the td tag of every column of this row.
+	 *
+	 * @param row Row to bold, first row is numbered 1 (not 0).
+	 */
+	public void boldRow(int row) {
+		int tr = tags.lookup("tr"), td = tags.lookup("td");
+		if (root < 0 || tr < 0) {
+			return;
+		}
+		// rows are counted along the table that holds the first tr in the document
+		int firstRow = -1;
+		for (int node = root; node >= 0; node = next(node)) {
+			if (isElement(node, tr)) {
+				firstRow = node;
+				break;
+			}
+		}
+		if (firstRow < 0) {
+			return;
+		}
+		int rowCount = 0;
+		for (int r = first[parent[firstRow]]; r >= 0; r = sibling[r]) {
+			if (isElement(r, tr) && ++rowCount == row) {
+				int b = tags.id("b");
+				for (int col = first[r]; col >= 0; col = sibling[col]) {
+					if (td >= 0 && isElement(col, td)) {
+						int bold = node(b, first[col], -1);
+						parent[bold] = col;
+						for (int child = first[bold]; child >= 0; child = sibling[child]) {
+							parent[child] = bold;
+						}
+						first[col] = bold;
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Remove all occurrences of a tag from the DOM tree. If the tag is p, em, or b, all
+	 * occurrences of the tag are removed. If the tag is ol or ul, then all occurrences of
+	 * such a tag are removed from the tree, and, in addition, all the li tags immediately
+	 * under the removed tag are converted to p tags.
+	 *
+	 * @param tag Tag to be removed, can be p, em, b, ol, or ul
+	 */
+	public void removeTag(String tag) {
+		int id = tags.lookup(tag);
+		if (root < 0 || id < 0 || first[root] < 0) {
+			return;
+		}
+		boolean list = tag.equals("ul") || tag.equals("ol");
+		int li = tags.lookup("li"), p = list ? tags.id("p") : -1;
+		// one pass in document order; the children of a removed element take its place
+		// and are looked at next
+		int up = root, prev = -1, node = first[root];
+		while (true) {
+			while (node >= 0) {
+				if (isElement(node, id)) {
+					if (list) {
+						for (int child = first[node]; child >= 0; child = sibling[child]) {
+							if (li >= 0 && isElement(child, li)) {
+								name[child] = p;
+							}
+						}
+					}
+					int child = first[node], last = child;
+					parent[child] = up;
+					while (sibling[last] >= 0) {
+						last = sibling[last];
+						parent[last] = up;
+					}
+					sibling[last] = sibling[node];
+					if (prev < 0) {
+						first[up] = child;
+					} else {
+						sibling[prev] = child;
+					}
+					first[node] = sibling[node] = parent[node] = -1;
+					node = child;
+				} else if (hasChildren(node)) {
+					up = node;
+					prev = -1;
+					node = first[node];
+				} else {
+					prev = node;
+					node = sibling[node];
+				}
+			}
+			if (up == root) {
+				return;
+			}
+			prev = up;
+			node = sibling[up];
+			up = parent[up];
+		}
+	}
+
+	/**
+	 * Adds a tag around all occurrences of a word in the DOM tree.
+	 *
+	 * @param word Word around which tag is to be added
+	 * @param tag Tag to be added
+	 */
+	public void addTag(String word, String tag) {
+		addTag(Collections.singleton(word), tag);
+	}
+
+	/**
+	 * Adds a tag around all occurrences of each of a set of words in the DOM tree, as
+	 * <code>Tree.addTag</code> does: words match in any case, with one trailing
+	 * punctuation mark, and text nodes are split so that the tag holds just the word.
+	 *
+	 * @param words Words around which tag is to be added
+	 * @param tag Tag to be added, em or b
+	 */
+	public void addTag(Collection<String> words, String tag) {
+		if (root < 0 || !(tag.equals("em") || tag.equals("b"))) {
+			return;
+		}
+		HashSet<String> targets = new HashSet<String>();
+		for (String word : words) {
+			targets.add(word.toLowerCase());
+		}
+		int id = tags.id(tag);
+		int[] spans = new int[16];
+		for (int node = 0, n = size; node < n; node++) {
+			if (name[node] >= 0 || parent[node] < 0) {
+				continue;
+			}
+			// find the words in the text
+			int start = -1 - name[node], end = start + first[node], count = 0;
+			for (int s = start; s < end; ) {
+				int e = s;
+				while (e < end && !Character.isWhitespace(arena.charAt(e))) {
+					e++;
+				}
+				int letters = TextIndex.letters(arena, s, e);
+				if (letters > s && targets.contains(arena.subSequence(s, letters).toString().toLowerCase())) {
+					if (count == spans.length) {
+						spans = Arrays.copyOf(spans, 2 * count);
+					}
+					spans[count++] = s;
+					spans[count++] = e;
+				}
+				s = e + 1;
+			}
+			if (count == 0) {
+				continue;
+			}
+			int up = parent[node];
+			if (count == 2 && spans[0] == start && spans[1] == end && first[up] == node
+					&& sibling[node] < 0 && name[up] == id) {
+				continue;
+			}
+			// the node becomes the first piece, and the others follow it
+			int next = sibling[node], at = start, last = -1;
+			for (int i = 0; i <= count; i += 2) {
+				int s = i < count ? spans[i] : end;
+				if (s > at) {
+					last = piece(node, last, -1 - at, s - at, up);
+				}
+				if (i < count) {
+					int text = node(-1 - s, spans[i + 1] - s, -1);
+					last = piece(node, last, id, text, up);
+					parent[text] = last;
+					at = spans[i + 1];
+				}
+			}
+			sibling[last] = next;
+		}
+	}
+
+	/**
+	 * Puts a node after the last piece of a split text node, reusing the text node for
+	 * the first piece
+	 */
+	private int piece(int node, int last, int name, int first, int up) {
+		int piece = last < 0 ? node : node(name, first, -1);
+		this.name[piece] = name;
+		this.first[piece] = first;
+		parent[piece] = up;
+		if (last >= 0) {
+			sibling[last] = piece;
+		}
+		return piece;
+	}
+
+	/**
+	 * Returns the node after a node in document order, or -1 at the end
+	 */
+	private int next(int node) {
+		if (hasChildren(node)) {
+			return first[node];
+		}
+		while (node != root && sibling[node] < 0) {
+			node = parent[node];
+		}
+		return node == root ? -1 : sibling[node];
+	}
+
+	/**
+	 * Gets the HTML represented by this DOM tree. The returned string includes new
+	 * lines, so that when it is printed, it will be identical to the input file from
+	 * which the DOM tree was built.
+	 *
+	 * @return HTML string, including new lines.
+	 */
+	public String getHTML() {
+		StringBuilder sb = new StringBuilder();
+		if (root < 0) {
+			return "";
+		}
+		// walk on the parent links, closing elements on the way up
+		int node = root;
+		while (true) {
+			if (hasChildren(node)) {
+				sb.append('<').append(tags.name(name[node])).append(">\n");
+				node = first[node];
+				continue;
+			}
+			if (name[node] >= 0) {
+				sb.append(tags.name(name[node]));
+			} else {
+				int start = -1 - name[node];
+				sb.append(arena, start, start + first[node]);
+			}
+			sb.append('\n');
+			while (node != root && sibling[node] < 0) {
+				node = parent[node];
+				sb.append("</").append(tags.name(name[node])).append(">\n");
+			}
+			if (node == root) {
+				return sb.toString();
+			}
+			node = sibling[node];
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index over a DOM tree: for every tag, the element nodes that have it, and for
+ * every node, its parent and its previous sibling. With these, all occurrences of a
+ * tag can be found, and a node can be unlinked or replaced, without searching the tree.
+ *
+ * An element is a node with children; a node without children is text, as in
+ * <code>Tree.getHTML</code>. The index stays correct only if the tree is changed
+ * through the methods of this class, which make the change and record it.
+ *
+ */
+public class TagIndex {
+
+	private final TagNode root;
+	private final HashMap<String, LinkedHashSet<TagNode>> byTag = new HashMap<String, LinkedHashSet<TagNode>>();
+	private final IdentityHashMap<TagNode, TagNode> parents = new IdentityHashMap<TagNode, TagNode>();
+	private final IdentityHashMap<TagNode, TagNode> previous = new IdentityHashMap<TagNode, TagNode>();
+
+	/**
+	 * Indexes every node under a root, the root included.
+	 *
+	 * @param root Root of the tree
+	 */
+	public TagIndex(TagNode root) {
+		this.root = root;
+		if (root == null) {
+			return;
+		}
+		TreeWalker.walk(root, new TreeWalker.Visitor() {
+			public boolean enter(TagNode node, TagNode parent, TagNode prev) {
+				parents.put(node, parent);
+				previous.put(node, prev);
+				if (node.firstChild != null) {
+					addElement(node);
+				}
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * @return Root of the indexed tree
+	 */
+	public TagNode root() {
+		return root;
+	}
+
+	/**
+	 * Returns the elements with a tag: those in the tree when it was indexed in document
+	 * order, then those tagged since, in the order they were tagged.
+	 *
+	 * @param tag The tag
+	 * @return New list of the elements
+	 */
+	public List<TagNode> elements(String tag) {
+		LinkedHashSet<TagNode> nodes = byTag.get(tag);
+		return nodes == null ? Collections.<TagNode>emptyList() : new ArrayList<TagNode>(nodes);
+	}
+
+	/**
+	 * @param tag The tag
+	 * @return Number of elements with the tag
+	 */
+	public int count(String tag) {
+		LinkedHashSet<TagNode> nodes = byTag.get(tag);
+		return nodes == null ? 0 : nodes.size();
+	}
+
+	/**
+	 * Returns every text node (node without children) in the tree, in no particular order.
+	 *
+	 * @return New list of the text nodes
+	 */
+	public List<TagNode> textNodes() {
+		ArrayList<TagNode> text = new ArrayList<TagNode>();
+		for (TagNode node : parents.keySet()) {
+			if (node.firstChild == null) {
+				text.add(node);
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * @param node A node in the tree
+	 * @return Its parent, or null for the root
+	 */
+	public TagNode parent(TagNode node) {
+		return parents.get(node);
+	}
+
+	/**
+	 * @param node A node in the tree
+	 * @return Its previous sibling, or null if it is a first child
+	 */
+	public TagNode previous(TagNode node) {
+		return previous.get(node);
+	}
+
+	/**
+	 * @param node A node
+	 * @return Whether the node is in the tree
+	 */
+	public boolean contains(TagNode node) {
+		return parents.containsKey(node);
+	}
+
+	/**
+	 * Changes the tag of an element.
+	 *
+	 * @param node An element in the tree
+	 * @param tag New tag
+	 */
+	public void rename(TagNode node, String tag) {
+		removeElement(node);
+		node.tag = tag;
+		addElement(node);
+	}
+
+	/**
+	 * Removes an element from the tree, putting its children in its place.
+	 *
+	 * @param node An element in the tree, not the root
+	 */
+	public void unwrap(TagNode node) {
+		TagNode parent = parents.get(node), prev = previous.get(node);
+		TagNode first = node.firstChild, last = first;
+		parents.put(first, parent);
+		while (last.sibling != null) {
+			last = last.sibling;
+			parents.put(last, parent);
+		}
+		last.sibling = node.sibling;
+		if (node.sibling != null) {
+			previous.put(node.sibling, last);
+		}
+		link(parent, prev, first);
+		previous.put(first, prev);
+		removeElement(node);
+		parents.remove(node);
+		previous.remove(node);
+		node.firstChild = null;
+		node.sibling = null;
+	}
+
+	/**
+	 * Puts a new element in place of a node, with the node as its only child.
+	 *
+	 * @param node A node in the tree, not the root
+	 * @param tag Tag of the new element
+	 * @return The new element
+	 */
+	public TagNode wrap(TagNode node, String tag) {
+		TagNode parent = parents.get(node), prev = previous.get(node);
+		TagNode element = new TagNode(tag, node, node.sibling);
+		node.sibling = null;
+		link(parent, prev, element);
+		parents.put(element, parent);
+		previous.put(element, prev);
+		if (element.sibling != null) {
+			previous.put(element.sibling, element);
+		}
+		parents.put(node, element);
+		previous.put(node, null);
+		addElement(element);
+		return element;
+	}
+
+	/**
+	 * Puts a new element under an element, with all of its children moved into the new
+	 * element.
+	 *
+	 * @param parent An element in the tree
+	 * @param tag Tag of the new element
+	 * @return The new element
+	 */
+	public TagNode wrapChildren(TagNode parent, String tag) {
+		TagNode element = new TagNode(tag, parent.firstChild, null);
+		parent.firstChild = element;
+		for (TagNode child = element.firstChild; child != null; child = child.sibling) {
+			parents.put(child, element);
+		}
+		parents.put(element, parent);
+		previous.put(element, null);
+		addElement(element);
+		return element;
+	}
+
+	/**
+	 * Splits a text node in two: the node keeps the text before an offset, and a new text
+	 * node holding the rest is put after it.
+	 *
+	 * @param node A text node in the tree, not the root
+	 * @param offset Offset in the text, greater than 0 and less than its length
+	 * @return The new text node
+	 */
+	public TagNode split(TagNode node, int offset) {
+		TagNode rest = new TagNode(node.tag.substring(offset), null, node.sibling);
+		node.tag = node.tag.substring(0, offset);
+		node.sibling = rest;
+		parents.put(rest, parents.get(node));
+		previous.put(rest, node);
+		if (rest.sibling != null) {
+			previous.put(rest.sibling, rest);
+		}
+		return rest;
+	}
+
+	private void link(TagNode parent, TagNode prev, TagNode node) {
+		if (prev != null) {
+			prev.sibling = node;
+		} else {
+			parent.firstChild = node;
+		}
+	}
+
+	private void addElement(TagNode node) {
+		LinkedHashSet<TagNode> nodes = byTag.get(node.tag);
+		if (nodes == null) {
+			nodes = new LinkedHashSet<TagNode>();
+			byTag.put(node.tag, nodes);
+		}
+		nodes.add(node);
+	}
+
+	private void removeElement(TagNode node) {
+		Set<TagNode> nodes = byTag.get(node.tag);
+		if (nodes != null) {
+			nodes.remove(node);
+			if (nodes.isEmpty()) {
+				byTag.remove(node.tag);
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * An intern table for tag names. Each distinct name gets one String and a small integer
+ * id, numbered from 0 in order of first appearance. Names can be looked up straight
+ * from a span of characters, so a parser does not have to make a String to find out
+ * that it has seen a tag before.
+ *
+ */
+public class TagTable {
+
+	private String[] names = new String[16];
+	private int[] slots = new int[32];
+	private int size;
+
+	/**
+	 * Initializes an empty table
+	 */
+	public TagTable() {
+		Arrays.fill(slots, -1);
+	}
+
+	/**
+	 * Returns the id of the name text[start..end), adding it if it is new.
+	 *
+	 * @param text Characters holding the name
+	 * @param start Offset of the first character of the name
+	 * @param end Offset just past the last character of the name
+	 * @return Id of the name
+	 */
+	public int id(char[] text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + text[i];
+		}
+		int mask = slots.length - 1;
+		int slot = mix(h) & mask;
+		for (int id = slots[slot]; id >= 0; id = slots[slot]) {
+			if (names[id].hashCode() == h && matches(names[id], text, start, end)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return add(new String(text, start, end - start), slot);
+	}
+
+	/**
+	 * Returns the id of a name, adding it if it is new.
+	 *
+	 * @param name The name
+	 * @return Id of the name
+	 */
+	public int id(String name) {
+		int slot = find(name);
+		return slots[slot] >= 0 ? slots[slot] : add(name, slot);
+	}
+
+	/**
+	 * Returns the id of a name, without adding it.
+	 *
+	 * @param name The name
+	 * @return Id of the name, or -1 if it is not in the table
+	 */
+	public int lookup(String name) {
+		return slots[find(name)];
+	}
+
+	/**
+	 * Returns the shared String for the name text[start..end), adding it if it is new.
+	 *
+	 * @param text Characters holding the name
+	 * @param start Offset of the first character of the name
+	 * @param end Offset just past the last character of the name
+	 * @return The interned name
+	 */
+	public String intern(char[] text, int start, int end) {
+		return names[id(text, start, end)];
+	}
+
+	/**
+	 * @param id Id of a name
+	 * @return The name
+	 */
+	public String name(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("No tag with id " + id);
+		}
+		return names[id];
+	}
+
+	/**
+	 * @return Number of distinct names
+	 */
+	public int size() {
+		return size;
+	}
+
+	private int find(String name) {
+		int h = name.hashCode();
+		int mask = slots.length - 1;
+		int slot = mix(h) & mask;
+		while (slots[slot] >= 0 && !names[slots[slot]].equals(name)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int add(String name, int slot) {
+		if (size == names.length) {
+			names = Arrays.copyOf(names, 2 * size);
+		}
+		names[size] = name;
+		slots[slot] = size;
+		if (2 * ++size > slots.length) {
+			rehash();
+		}
+		return size - 1;
+	}
+
+	private void rehash() {
+		slots = new int[2 * slots.length];
+		Arrays.fill(slots, -1);
+		int mask = slots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = mix(names[id].hashCode()) & mask;
+			while (slots[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id;
+		}
+	}
+
+	private static int mix(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean matches(String name, char[] text, int start, int end) {
+		if (name.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (name.charAt(i - start) != text[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,235 @@
+package structures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the words in the text nodes of a DOM tree: for every word, the text nodes
+ * it occurs in and its offsets in each.
+ *
+ * A word is a run of letters with whitespace or the end of the text on either side,
+ * except that one punctuation mark (one of ! ? . , ; :) may follow it; the mark is
+ * tagged along with the word. Words are matched without regard to case, so the index is
+ * keyed by the lower case form.
+ *
+ * The index works over a {@link TagIndex}, and stays correct if text nodes are changed
+ * only through this class. Changes made through the TagIndex leave text nodes as they
+ * are, so they do not affect it.
+ *
+ */
+public class TextIndex {
+
+	static final String PUNCTUATION = "!?.,;:";
+
+	private final TagIndex tags;
+
+	/**
+	 * For every word, the text nodes it occurs in and its offsets in each, in order. Nodes
+	 * are compared by identity, as TagNode keeps Object's equals and hashCode; a HashMap
+	 * rather than an IdentityHashMap, since tagging removes and inserts many nodes of one
+	 * word in its own iteration order, which piles up long probe runs in an open
+	 * addressed table.
+	 */
+	private final HashMap<String, HashMap<TagNode, int[]>> words = new HashMap<String, HashMap<TagNode, int[]>>();
+
+	/**
+	 * Indexes the words of every text node in a tree.
+	 *
+	 * @param tags Index of the tree
+	 */
+	public TextIndex(TagIndex tags) {
+		this.tags = tags;
+		for (TagNode node : tags.textNodes()) {
+			if (node != tags.root()) {
+				add(node);
+			}
+		}
+	}
+
+	/**
+	 * @return Index of the tree whose text is indexed
+	 */
+	public TagIndex tags() {
+		return tags;
+	}
+
+	/**
+	 * Returns the text nodes that a word occurs in, in no particular order.
+	 *
+	 * @param word The word, in any case
+	 * @return New list of the text nodes
+	 */
+	public List<TagNode> nodes(String word) {
+		HashMap<TagNode, int[]> nodes = words.get(normalize(word));
+		return nodes == null ? Collections.<TagNode>emptyList() : new ArrayList<TagNode>(nodes.keySet());
+	}
+
+	/**
+	 * Returns the offsets at which a word starts in a text node.
+	 *
+	 * @param word The word, in any case
+	 * @param node A text node in the tree
+	 * @return New array of the offsets, in increasing order - empty if the word is not in the node
+	 */
+	public int[] offsets(String word, TagNode node) {
+		HashMap<TagNode, int[]> nodes = words.get(normalize(word));
+		int[] offsets = nodes == null ? null : nodes.get(node);
+		return offsets == null ? new int[0] : offsets.clone();
+	}
+
+	/**
+	 * @param word The word, in any case
+	 * @return Number of times the word occurs in the text of the tree
+	 */
+	public int count(String word) {
+		HashMap<TagNode, int[]> nodes = words.get(normalize(word));
+		int count = 0;
+		if (nodes != null) {
+			for (int[] offsets : nodes.values()) {
+				count += offsets.length;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Puts a new element around every occurrence of any of a set of words. Text nodes are
+	 * split at word boundaries, so that each element holds exactly one occurrence of a
+	 * word and its punctuation mark, if any. Only the text nodes holding the words are
+	 * visited. An occurrence that is already the whole text of an element with the tag
+	 * is left as it is.
+	 *
+	 * @param targets The words, in any case
+	 * @param tag Tag of the new elements
+	 * @return Number of elements added
+	 */
+	public int tag(Collection<String> targets, String tag) {
+		// gather the occurrences of all the words, by node
+		LinkedHashMap<TagNode, ArrayList<int[]>> spans = new LinkedHashMap<TagNode, ArrayList<int[]>>();
+		HashSet<String> seen = new HashSet<String>();
+		for (String target : targets) {
+			String word = normalize(target);
+			if (!seen.add(word)) {
+				continue;
+			}
+			HashMap<TagNode, int[]> nodes = words.get(word);
+			if (nodes == null) {
+				continue;
+			}
+			for (Map.Entry<TagNode, int[]> entry : nodes.entrySet()) {
+				ArrayList<int[]> list = spans.get(entry.getKey());
+				if (list == null) {
+					list = new ArrayList<int[]>();
+					spans.put(entry.getKey(), list);
+				}
+				String text = entry.getKey().tag;
+				for (int start : entry.getValue()) {
+					int end = start + word.length();
+					if (end < text.length() && PUNCTUATION.indexOf(text.charAt(end)) >= 0) {
+						end++;
+					}
+					list.add(new int[] { start, end });
+				}
+			}
+		}
+		int added = 0;
+		for (Map.Entry<TagNode, ArrayList<int[]>> entry : spans.entrySet()) {
+			added += tag(entry.getKey(), entry.getValue(), tag);
+		}
+		return added;
+	}
+
+	/**
+	 * Tags the given spans of one text node
+	 */
+	private int tag(TagNode node, ArrayList<int[]> spans, String tag) {
+		TagNode parent = tags.parent(node);
+		if (spans.size() == 1 && spans.get(0)[0] == 0 && spans.get(0)[1] == node.tag.length()
+				&& node.sibling == null && parent.firstChild == node && parent.tag.equals(tag)) {
+			return 0;
+		}
+		remove(node);
+		// words do not overlap, and splitting from the right keeps the offsets to the left
+		Collections.sort(spans, (a, b) -> b[0] - a[0]);
+		for (int[] span : spans) {
+			if (span[1] < node.tag.length()) {
+				add(tags.split(node, span[1]));
+			}
+			TagNode word = span[0] > 0 ? tags.split(node, span[0]) : node;
+			add(word);
+			tags.wrap(word, tag);
+		}
+		if (spans.get(spans.size() - 1)[0] > 0) {
+			add(node);
+		}
+		return spans.size();
+	}
+
+	private void add(TagNode node) {
+		String text = node.tag;
+		for (int start = 0, n = text.length(); start < n; ) {
+			int end = start;
+			while (end < n && !Character.isWhitespace(text.charAt(end))) {
+				end++;
+			}
+			int letters = letters(text, start, end);
+			if (letters > start) {
+				String word = normalize(text.substring(start, letters));
+				HashMap<TagNode, int[]> nodes = words.get(word);
+				if (nodes == null) {
+					nodes = new HashMap<TagNode, int[]>();
+					words.put(word, nodes);
+				}
+				int[] offsets = nodes.get(node);
+				offsets = offsets == null ? new int[1] : Arrays.copyOf(offsets, offsets.length + 1);
+				offsets[offsets.length - 1] = start;
+				nodes.put(node, offsets);
+			}
+			start = end + 1;
+		}
+	}
+
+	private void remove(TagNode node) {
+		String text = node.tag;
+		for (int start = 0, n = text.length(); start < n; ) {
+			int end = start;
+			while (end < n && !Character.isWhitespace(text.charAt(end))) {
+				end++;
+			}
+			int letters = letters(text, start, end);
+			if (letters > start) {
+				String word = normalize(text.substring(start, letters));
+				HashMap<TagNode, int[]> nodes = words.get(word);
+				if (nodes != null && nodes.remove(node) != null && nodes.isEmpty()) {
+					words.remove(word);
+				}
+			}
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Returns the end of the word in text[start..end), or start if it is not a word
+	 */
+	static int letters(CharSequence text, int start, int end) {
+		int i = start;
+		while (i < end && Character.isLetter(text.charAt(i))) {
+			i++;
+		}
+		if (i == end || (i == end - 1 && PUNCTUATION.indexOf(text.charAt(i)) >= 0)) {
+			return i;
+		}
+		return start;
+	}
+
+	private static String normalize(String word) {
+		return word.toLowerCase();
+	}
+}
@@ -21,6 +21,16 @@ public class Tree {
 	 */
 	Scanner sc;
 	
+	/**
+	 * Index of tags, parents and previous siblings, made when first needed
+	 */
+	TagIndex index;
+	
+	/**
+	 * Index of the words in the text, made when first needed
+	 */
+	TextIndex text;
+	
 	/**
 	 * Initializes this tree object with scanner for input HTML file
 	 * 
@@ -40,51 +50,37 @@ public class Tree {
 	public void build() {
 		/** COMPLETE THIS METHOD **/
 		
-		Stack<TagNode> tagNodes = new Stack<TagNode>(); //stack for tag nodes
-		
-		sc.nextLine(); //scans through the line
-		
-		root = new TagNode("html", null, null); //root node is HTML
-		tagNodes.push(root); //pushes <HTML> tag into stack 
-		
-		while (sc.hasNextLine()) { //traverse through HTML 
-			
-			String string = sc.nextLine();
-			boolean isATag = false; 
-			
-			if(string.charAt(0) == '<') { // check to see if it is a tag
-				if(string.charAt(1) == '/') { // checks to see if its an end tag
-					tagNodes.pop();
-					continue;
-			}
-			
-			else {
-				string = string.replace("<", "");
-				string = string.replace(">", "");
-				isATag = true; //checks if its a beginning tag 
-				}
-			}
-		
-		
-		TagNode node = new TagNode(string, null, null);
-		
-		if (tagNodes.peek().firstChild == null) {
-			tagNodes.peek().firstChild = node; 
-		}
-		else {
-			TagNode sib = tagNodes.peek().firstChild;
-			while(sib.sibling != null) {
-				sib = sib.sibling; 
-			}
-			sib.sibling = node; 
+		//the builder keeps the last child of every open tag, so each node is appended in constant time
+		root = TreeBuilder.build(sc);
+		index = null;
+		text = null;
+	}
+	
+	/**
+	 * Returns the index of this tree, making it if needed. Changes made through it are
+	 * made to the tree.
+	 * 
+	 * @return Index over the current tree
+	 */
+	TagIndex index() {
+		if (index == null || index.root() != root) {
+			index = new TagIndex(root);
 		}
+		return index;
+	}
 	
-		if (isATag) {
-			tagNodes.push(node);
-		
-				}
-			}
+	/**
+	 * Returns the word index of this tree, making it if needed.
+	 * 
+	 * @return Index over the text of the current tree
+	 */
+	TextIndex text() {
+		TagIndex index = index();
+		if (text == null || text.tags() != index) {
+			text = new TextIndex(index);
 		}
+		return text;
+	}
 	
 	/**
 	 * Replaces all occurrences of an old tag in the DOM tree with a new tag
@@ -95,22 +91,14 @@ public class Tree {
 	public void replaceTag(String oldTag, String newTag) {
 		/** COMPLETE THIS METHOD **/
 		
-		this.repTag(root.firstChild, oldTag, newTag);
-	}
-		
-	private void repTag(TagNode root, String oldTag, String newTag) {
-		
-		for(TagNode ptr = root; ptr != null; ptr = ptr.sibling) {
-			if (root.firstChild != null) {
-				this.repTag(root.firstChild, oldTag, newTag);
-			}
-			if (root.sibling != null) {
-				this.repTag(root.sibling, oldTag, newTag);
-			}
-			if (root.tag.equals(oldTag)) {
-				root.tag = newTag; 
-			}
-		}	
+		//the index lists every element with the old tag, so nothing else is visited
+		if (root == null || oldTag.equals(newTag)) {
+			return;
+		}
+		TagIndex index = index();
+		for (TagNode node : index.elements(oldTag)) {
+			index.rename(node, newTag);
+		}
 	}
 	
 	/**
@@ -121,21 +109,43 @@ public class Tree {
 	 */
 	public void boldRow(int row) {
 		/** COMPLETE THIS METHOD **/
-		this.boldRowRec(row, 0, root, root.firstChild);
-	}
-	
-	private void boldRowRec(int row, int rowCount, TagNode prev, TagNode trav) {
-		if (trav == null) {
+		if (root == null) {
 			return;
-	}
-		else if (trav.tag.equals("tr")) {
-			rowCount++;
 		}
-		if (rowCount == row && trav.firstChild == null) {
-			prev.firstChild = new TagNode("b", trav, null);
+		TagIndex index = index();
+		if (index.count("tr") == 0) {
+			return;
+		}
+		//rows are counted along the table that holds the first tr in the document
+		TagNode table = index.parent(firstElement("tr"));
+		int rowCount = 0;
+		for (TagNode tr = table.firstChild; tr != null; tr = tr.sibling) {
+			if (tr.firstChild != null && tr.tag.equals("tr") && ++rowCount == row) {
+				for (TagNode td = tr.firstChild; td != null; td = td.sibling) {
+					if (td.firstChild != null && td.tag.equals("td")) {
+						index.wrapChildren(td, "b");
+					}
+				}
+				return;
+			}
 		}
-	boldRowRec(row, rowCount, trav, trav.firstChild);
-	boldRowRec(row, rowCount, trav, trav.sibling);
+	}
+	
+	/**
+	 * Returns the first element with a tag, in document order, or null if there is none.
+	 */
+	private TagNode firstElement(final String tag) {
+		final TagNode[] found = new TagNode[1];
+		TreeWalker.walk(root, new TreeWalker.Visitor() {
+			public boolean enter(TagNode node, TagNode parent, TagNode previous) {
+				if (node.firstChild != null && node.tag.equals(tag)) {
+					found[0] = node;
+					stop();
+				}
+				return true;
+			}
+		});
+		return found[0];
 	}
 	
 	/**
@@ -150,81 +160,24 @@ public class Tree {
 		if (root == null) {
 			return;
 		}
-		else {
-			while (this.containsATag(tag, root)) {
-				removeTagN(tag, root, root.firstChild);
-				}
-			}
-		}
-	
-	private void removeTagN(String tag, TagNode previous, TagNode traverse) {
-		if (traverse == null) {
-				return;
+		//each removal splices the children into place through the index, with no search of the tree
+		TagIndex index = index();
+		boolean list = tag.equals("ul") || tag.equals("ol");
+		for (TagNode node : index.elements(tag)) {
+			if (node == root) {
+				continue;
 			}
-		if (previous == null ) {
-			return;
-		}
-		
-		else if (traverse.tag.equals(tag)) { 
-			if (tag.equals("ul")) {
-					this.removeListTagHelper(traverse.firstChild);
+			if (list) {
+				for (TagNode child = node.firstChild; child != null; child = child.sibling) {
+					if (child.firstChild != null && child.tag.equals("li")) {
+						index.rename(child, "p");
+					}
 				}
-			if (tag.equals("ol")) {
-				this.removeListTagHelper(traverse.firstChild);
 			}
-		
-		if (previous.firstChild == traverse) {
-			previous.firstChild = traverse.firstChild;
-			this.addLastSibling(traverse.firstChild, traverse.sibling);
-		}
-		else if (previous.sibling == traverse) {
-			this.addLastSibling(traverse.firstChild, traverse.sibling);
-			previous.sibling = traverse.firstChild;
-		}
-		return;
-	}
-		previous = traverse;
-		removeTagN(tag, previous, traverse.firstChild);
-		removeTagN(tag, previous, traverse.sibling);
-		
-}
-	private void removeListTagHelper(TagNode traverse) {
-		if (traverse == null) {
-			return;
-		}
-		else if (traverse.tag.compareTo("li") == 0) {
-			traverse.tag = "p";
-		}
-		this.removeListTagHelper(traverse.sibling);
-	}
-	private TagNode getLastSibling (TagNode traverse) {
-		while (traverse.sibling == null) {
-			return null;
-		}
-		while (traverse.sibling != null) {
-			traverse = traverse.sibling;
+			index.unwrap(node);
 		}
-		return traverse;
-	}
-
-	private void addLastSibling(TagNode traverse, TagNode sibling) {
-		traverse =  this.getLastSibling(traverse);
-		traverse.sibling = sibling;
 	}
 	
-	private boolean containsATag(String tag, TagNode traverse) {
-		if (traverse == null) {
-			return false;
-		}
-		else if (traverse.tag.compareTo(tag) == 0) {
-			return true;
-		}
-		
-		return this.containsATag(tag, traverse.firstChild) || 
-				containsATag(tag, traverse.sibling);
-	}
-
-	
 	/**
 	 * Adds a tag around all occurrences of a word in the DOM tree.
 	 * 
@@ -232,41 +185,26 @@ public class Tree {
 	 * @param tag Tag to be added
 	 */
 	public void addTag(String word, String tag){
-			/** COMPLETE THIS METHOD **/
-			
-		if (tag.equals("em")) {
-			root = addTagN(this.root, word, tag);
-			}
-		if (tag.equals("b")) {
-			root = addTagN(this.root, word, tag);
-			}
-		}
-		
-		private TagNode addTagN(TagNode node, String wordNode, String tag) {
-			if (node.sibling != null) {
-				node.sibling = addTagN(node.sibling, wordNode, tag);
-			if (node.sibling == null) { 
-				return null;
-			}
-		}
-
-			if (node.firstChild == null) {
-				return null;
-			}
-			if (node.firstChild!= null) {
-				node.firstChild = addTagN(node.firstChild, wordNode, tag);
-			}
-
-		
-			if (node.tag.contains(wordNode)) {
-				TagNode newTagN = new TagNode(tag, node, node.sibling);
-				node.sibling = null;
-				return newTagN;
-			}
-		
-			return node;
-				
+		/** COMPLETE THIS METHOD **/
+		addTag(Collections.singleton(word), tag);
+	}
+	
+	/**
+	 * Adds a tag around all occurrences of each of a set of words in the DOM tree. A word
+	 * matches in any case, with whitespace on either side, and may be followed by one
+	 * punctuation mark, which is tagged along with it. Text is split so that the tag
+	 * holds just the word.
+	 * 
+	 * @param words Words around which tag is to be added
+	 * @param tag Tag to be added, em or b
+	 */
+	public void addTag(Collection<String> words, String tag) {
+		if (root == null || !(tag.equals("em") || tag.equals("b"))) {
+			return;
 		}
+		//the word index leads straight to the text nodes that hold the words
+		text().tag(words, tag);
+	}
 	
 	/**
 	 * Gets the HTML represented by this DOM tree. The returned string includes
@@ -276,26 +214,30 @@ public class Tree {
 	 * @return HTML string, including new lines. 
 	 */
 	public String getHTML() {
-		StringBuilder sb = new StringBuilder();
-		getHTML(root, sb);
-		return sb.toString();
-	}
-	
-	private void getHTML(TagNode root, StringBuilder sb) {
-		for (TagNode ptr=root; ptr != null;ptr=ptr.sibling) {
-			if (ptr.firstChild == null) {
-				sb.append(ptr.tag);
-				sb.append("\n");
-			} else {
-				sb.append("<");
-				sb.append(ptr.tag);
-				sb.append(">\n");
-				getHTML(ptr.firstChild, sb);
-				sb.append("</");
-				sb.append(ptr.tag);
-				sb.append(">\n");	
+		final StringBuilder sb = new StringBuilder();
+		TreeWalker.walk(root, new TreeWalker.Visitor() {
+			public boolean enter(TagNode node, TagNode parent, TagNode previous) {
+				if (node.firstChild == null) {
+					sb.append(node.tag);
+					sb.append("\n");
+				} else {
+					sb.append("<");
+					sb.append(node.tag);
+					sb.append(">\n");
+				}
+				return true;
 			}
-		}
+			
+			public TagNode leave(TagNode node, TagNode parent, TagNode previous) {
+				if (node.firstChild != null) {
+					sb.append("</");
+					sb.append(node.tag);
+					sb.append(">\n");
+				}
+				return node;
+			}
+		});
+		return sb.toString();
 	}
 	
 	/**
@@ -303,23 +245,31 @@ public class Tree {
 	 *
 	 */
 	public void print() {
-		print(root, 1);
-	}
-	
-	private void print(TagNode root, int level) {
-		for (TagNode ptr=root; ptr != null;ptr=ptr.sibling) {
-			for (int i=0; i < level-1; i++) {
-				System.out.print("      ");
-			};
-			if (root != this.root) {
-				System.out.print("|----");
-			} else {
-				System.out.print("     ");
+		TreeWalker.walk(root, new TreeWalker.Visitor() {
+			private int level = 1;
+			
+			public boolean enter(TagNode node, TagNode parent, TagNode previous) {
+				for (int i=0; i < level-1; i++) {
+					System.out.print("      ");
+				};
+				if (parent != null) {
+					System.out.print("|----");
+				} else {
+					System.out.print("     ");
+				}
+				System.out.println(node.tag);
+				if (node.firstChild != null) {
+					level++;
+				}
+				return true;
 			}
-			System.out.println(ptr.tag);
-			if (ptr.firstChild != null) {
-				print(ptr.firstChild, level+1);
+			
+			public TagNode leave(TagNode node, TagNode parent, TagNode previous) {
+				if (node.firstChild != null) {
+					level--;
+				}
+				return node;
 			}
-		}
+		});
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+package structures;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Measures the heap taken by a DOM tree of TagNodes and by a {@link CompactTree} built
+ * from the same document, and the time to build each and write it back out. Run with
+ * <pre>
+ *     java structures.TreeBenchmark [rows]
+ * </pre>
+ * The document is a table of the given number of rows, each of three cells, with a
+ * paragraph after every tenth row - about 7 nodes per row. Tagging a single word
+ * that occurs in six rows of every seven is timed on the TagNode tree, with its
+ * indexes already built, since each occurrence splits and re-indexes a text node. The heap is read after
+ * collecting garbage, with the tree still reachable, so the figures include everything
+ * the tree holds on to; for the CompactTree it is read again after bolding a row, as
+ * the first edit after a build is when its columns would have to grow. Give the VM
+ * enough heap to hold the document text and both trees.
+ *
+ */
+public class TreeBenchmark {
+
+	/**
+	 * Keeps the trees reachable while the heap is measured
+	 */
+	static Object sink;
+
+	public static void main(String[] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		String html = document(rows);
+		System.out.printf("%d rows, %d characters of HTML%n", rows, html.length());
+
+		long base = usedHeap();
+		long start = System.nanoTime();
+		Tree tree = new Tree(null);
+		tree.root = TreeBuilder.build(new StringReader(html));
+		long built = System.nanoTime() - start;
+		sink = tree;
+		long nodes = usedHeap() - base;
+		start = System.nanoTime();
+		int length = tree.getHTML().length();
+		long written = System.nanoTime() - start;
+		report("TagNode", nodes, built, written, length);
+		tree.text();
+		start = System.nanoTime();
+		tree.addTag("sold", "em");
+		long tagged = System.nanoTime() - start;
+		System.out.printf("%-12s addTag of one word in %d text nodes %8.1f ms%n", "TagNode",
+				tree.index().count("em"), tagged / 1e6);
+		tree = null;
+		sink = null;
+
+		base = usedHeap();
+		start = System.nanoTime();
+		CompactTree compact = new CompactTree(null);
+		compact.build(new StringReader(html));
+		built = System.nanoTime() - start;
+		sink = compact;
+		long columns = usedHeap() - base;
+		start = System.nanoTime();
+		length = compact.getHTML().length();
+		written = System.nanoTime() - start;
+		report("CompactTree", columns, built, written, length);
+		System.out.printf("%d nodes, %.1f bytes/node compact, %.2fx smaller%n", compact.size(),
+				(double) columns / compact.size(), (double) nodes / columns);
+		compact.boldRow(1);
+		long edited = usedHeap() - base;
+		System.out.printf("%-12s %10.1f MB after one edit, %.2fx smaller%n", "CompactTree",
+				edited / 1e6, (double) nodes / edited);
+	}
+
+	static void report(String storage, long bytes, long built, long written, int length) {
+		System.out.printf("%-12s %10.1f MB  build %8.1f ms  getHTML %8.1f ms  (%d chars)%n", storage,
+				bytes / 1e6, built / 1e6, written / 1e6, length);
+	}
+
+	static String document(int rows) {
+		StringBuilder sb = new StringBuilder("<html>\n<body>\n<table>\n");
+		for (int i = 0; i < rows; i++) {
+			sb.append("<tr>\n");
+			sb.append("<td>\n").append(i).append("\n</td>\n");
+			sb.append("<td>\nitem ").append(i % 1000).append("\n</td>\n");
+			sb.append("<td>\n").append(i % 7 == 0 ? "in stock" : "sold out").append("\n</td>\n");
+			sb.append("</tr>\n");
+			if (i % 10 == 9) {
+				sb.append("</table>\n<p>\nThe quick brown fox jumps over the lazy dog.\n</p>\n<table>\n");
+			}
+		}
+		sb.append("</table>\n</body>\n</html>\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return Bytes of heap in use after collecting garbage
+	 */
+	static long usedHeap() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			memory.gc();
+			used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+		}
+		return used;
+	}
+}
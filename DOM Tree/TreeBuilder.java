@@ -0,0 +1,305 @@
+package structures;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * This class reads HTML in the line format that <code>Tree.build</code> expects: the
+ * first line opens the html element, a line starting with &lt;/ closes the innermost
+ * open element, any other line starting with &lt; opens an element whose tag is the
+ * line without its &lt; and &gt; characters, and every other line is text.
+ *
+ * Input is read a buffer at a time and split into lines without making a String per
+ * line; tag names are interned, so each distinct tag is one String, and only text
+ * lines become new Strings. The lines are passed to a {@link Handler} as they are
+ * read. {@link NodeHandler} builds the DOM tree from them, keeping the last child of
+ * every open element so that each node is appended in constant time, which makes the
+ * build linear in the size of the input.
+ *
+ */
+public class TreeBuilder {
+
+	/**
+	 * Receives the elements and text of a document, in document order
+	 */
+	public interface Handler {
+		/**
+		 * Called for a line that opens an element
+		 *
+		 * @param tag Interned tag name
+		 */
+		void startTag(String tag);
+
+		/**
+		 * Called for a line that closes the innermost open element
+		 */
+		void endTag();
+
+		/**
+		 * Called for a line of text
+		 *
+		 * @param text The line
+		 */
+		void text(String text);
+	}
+
+	/**
+	 * Builds a tree of TagNodes from the lines of a document
+	 */
+	public static class NodeHandler implements Handler {
+		private final TagNode root = new TagNode("html", null, null);
+
+		/**
+		 * Open elements, innermost last, and the last child of each
+		 */
+		private TagNode[] open = new TagNode[16];
+		private TagNode[] last = new TagNode[16];
+		private int depth;
+
+		public NodeHandler() {
+			open[0] = root;
+			depth = 1;
+		}
+
+		/**
+		 * @return The root (html) node
+		 */
+		public TagNode root() {
+			return root;
+		}
+
+		public void startTag(String tag) {
+			TagNode node = append(new TagNode(tag, null, null));
+			if (depth == open.length) {
+				open = Arrays.copyOf(open, 2 * depth);
+				last = Arrays.copyOf(last, 2 * depth);
+			}
+			open[depth] = node;
+			last[depth++] = null;
+		}
+
+		public void endTag() {
+			if (depth == 0) {
+				throw new NoSuchElementException("Closing tag with no open element");
+			}
+			open[--depth] = null;
+			last[depth] = null;
+		}
+
+		public void text(String text) {
+			append(new TagNode(text, null, null));
+		}
+
+		private TagNode append(TagNode node) {
+			if (depth == 0) {
+				throw new NoSuchElementException("Content after the html element was closed");
+			}
+			int top = depth - 1;
+			if (last[top] == null) {
+				open[top].firstChild = node;
+			} else {
+				last[top].sibling = node;
+			}
+			last[top] = node;
+			return node;
+		}
+	}
+
+	private static final int BUFFER = 1 << 13;
+
+	private final Handler handler;
+	private final TagTable tags;
+
+	/**
+	 * The line being read
+	 */
+	private char[] line = new char[256];
+	private int length;
+	private boolean first = true;
+
+	/**
+	 * Whether the last character read was a carriage return
+	 */
+	private boolean afterReturn;
+
+	/**
+	 * Initializes a builder that interns tags in a table of its own
+	 *
+	 * @param handler Receives the lines of the document
+	 */
+	public TreeBuilder(Handler handler) {
+		this(handler, new TagTable());
+	}
+
+	/**
+	 * Initializes a builder
+	 *
+	 * @param handler Receives the lines of the document
+	 * @param tags Table that tag names are interned in
+	 */
+	public TreeBuilder(Handler handler, TagTable tags) {
+		this.handler = handler;
+		this.tags = tags;
+	}
+
+	/**
+	 * Builds a DOM tree from a reader.
+	 *
+	 * @param in The HTML input - not closed
+	 * @return The root (html) node
+	 * @throws IOException If the input cannot be read
+	 */
+	public static TagNode build(Reader in) throws IOException {
+		NodeHandler handler = new NodeHandler();
+		new TreeBuilder(handler).parse(in);
+		return handler.root();
+	}
+
+	/**
+	 * Builds a DOM tree from UTF-8 bytes.
+	 *
+	 * @param in The HTML input, read from its position to its limit
+	 * @return The root (html) node
+	 */
+	public static TagNode build(ByteBuffer in) {
+		NodeHandler handler = new NodeHandler();
+		new TreeBuilder(handler).parse(in);
+		return handler.root();
+	}
+
+	/**
+	 * Builds a DOM tree from the lines of a scanner.
+	 *
+	 * @param sc Scanner for the HTML input
+	 * @return The root (html) node
+	 */
+	public static TagNode build(Scanner sc) {
+		NodeHandler handler = new NodeHandler();
+		TreeBuilder builder = new TreeBuilder(handler);
+		while (sc.hasNextLine()) {
+			builder.line(sc.nextLine());
+		}
+		return handler.root();
+	}
+
+	/**
+	 * Reads a document from a reader and passes its lines to the handler.
+	 *
+	 * @param in The HTML input - not closed
+	 * @throws IOException If the input cannot be read
+	 */
+	public void parse(Reader in) throws IOException {
+		char[] buf = new char[BUFFER];
+		for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+			for (int i = 0; i < n; i++) {
+				put(buf[i]);
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Reads a document of UTF-8 bytes and passes its lines to the handler.
+	 *
+	 * @param in The HTML input, read from its position to its limit
+	 */
+	public void parse(ByteBuffer in) {
+		int pos = in.position(), limit = in.limit();
+		while (pos < limit) {
+			byte b = in.get(pos);
+			if (b >= 0) {
+				// ASCII, which includes every character that marks up a line
+				put((char) b);
+				pos++;
+			} else {
+				// decode a run of non-ASCII bytes; it cannot contain a line break
+				int end = pos;
+				while (end < limit && in.get(end) < 0) {
+					end++;
+				}
+				ByteBuffer run = in.duplicate();
+				run.limit(end).position(pos);
+				String decoded = StandardCharsets.UTF_8.decode(run).toString();
+				for (int i = 0; i < decoded.length(); i++) {
+					put(decoded.charAt(i));
+				}
+				pos = end;
+			}
+		}
+		finish();
+	}
+
+	/**
+	 * Passes one line, without its line break, to the handler.
+	 *
+	 * @param text The line
+	 */
+	public void line(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (length == line.length) {
+				line = Arrays.copyOf(line, 2 * length);
+			}
+			line[length++] = c;
+		}
+		endLine();
+	}
+
+	private void put(char c) {
+		if (c == '\n' || c == '\r') {
+			if (c == '\n' && afterReturn) {
+				// second half of \r\n
+				afterReturn = false;
+				return;
+			}
+			afterReturn = c == '\r';
+			endLine();
+			return;
+		}
+		afterReturn = false;
+		if (length == line.length) {
+			line = Arrays.copyOf(line, 2 * length);
+		}
+		line[length++] = c;
+	}
+
+	/**
+	 * Passes on a last line that has no line break
+	 */
+	private void finish() {
+		if (length > 0) {
+			endLine();
+		}
+	}
+
+	private void endLine() {
+		int n = length;
+		length = 0;
+		if (first) {
+			// the html line - the handler starts with the root open
+			first = false;
+			return;
+		}
+		if (n > 0 && line[0] == '<') {
+			if (n > 1 && line[1] == '/') {
+				handler.endTag();
+				return;
+			}
+			// the tag is the line without any < or >
+			int end = 0;
+			for (int i = 0; i < n; i++) {
+				if (line[i] != '<' && line[i] != '>') {
+					line[end++] = line[i];
+				}
+			}
+			handler.startTag(tags.intern(line, 0, end));
+			return;
+		}
+		handler.text(new String(line, 0, n));
+	}
+}
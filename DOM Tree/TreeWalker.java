@@ -0,0 +1,118 @@
+package structures;
+
+import java.util.Arrays;
+
+/**
+ * Walks a DOM tree in document order on an explicit stack, so that neither the depth
+ * nor the width of the tree is limited by the thread stack.
+ *
+ * A {@link Visitor} is told when the walk enters a node, before its children, and
+ * when it leaves the node, after them. The tree may be changed while it is walked:
+ * the children of a node are read after <code>enter</code> returns, and the next
+ * sibling is read after <code>leave</code> returns, from the node that
+ * <code>leave</code> names as the last one handled at that level.
+ *
+ */
+public class TreeWalker {
+
+	/**
+	 * Receives the nodes of a tree as it is walked. By default every node is descended
+	 * into and nothing is done.
+	 */
+	public static abstract class Visitor {
+		private boolean stopped;
+
+		/**
+		 * Called when the walk reaches a node, before any of its children.
+		 *
+		 * @param node The node
+		 * @param parent Its parent, or null for the node the walk started at and its siblings
+		 * @param previous Its previous sibling, or null for a first child
+		 * @return Whether to walk the children of the node
+		 */
+		public boolean enter(TagNode node, TagNode parent, TagNode previous) {
+			return true;
+		}
+
+		/**
+		 * Called when the walk is done with a node and its children. If the node has been
+		 * replaced in its sibling chain, here or in <code>enter</code>, return the last of
+		 * the nodes that took its place; the walk goes on with the sibling of the node
+		 * returned.
+		 *
+		 * @param node The node
+		 * @param parent Its parent, or null for the node the walk started at and its siblings
+		 * @param previous Its previous sibling, or null for a first child
+		 * @return The node whose next sibling is visited next - normally node itself
+		 */
+		public TagNode leave(TagNode node, TagNode parent, TagNode previous) {
+			return node;
+		}
+
+		/**
+		 * Ends the walk once the current callback returns. No other node is entered or
+		 * left.
+		 */
+		protected final void stop() {
+			stopped = true;
+		}
+	}
+
+	private TreeWalker() {
+	}
+
+	/**
+	 * Walks a node, its descendants, and its siblings and their descendants.
+	 *
+	 * @param first First node of a sibling chain
+	 * @param visitor Receives the nodes
+	 */
+	public static void walk(TagNode first, Visitor visitor) {
+		// ancestors of the current node, with their parents and previous siblings
+		TagNode[] nodes = new TagNode[32], parents = new TagNode[32], previous = new TagNode[32];
+		int depth = 0;
+		visitor.stopped = false;
+		TagNode node = first, parent = null, prev = null;
+		while (true) {
+			while (node != null) {
+				if (!visitor.enter(node, parent, prev) || node.firstChild == null) {
+					if (visitor.stopped) {
+						return;
+					}
+					prev = visitor.leave(node, parent, prev);
+					if (visitor.stopped) {
+						return;
+					}
+					node = prev.sibling;
+					continue;
+				}
+				if (visitor.stopped) {
+					return;
+				}
+				if (depth == nodes.length) {
+					nodes = Arrays.copyOf(nodes, 2 * depth);
+					parents = Arrays.copyOf(parents, 2 * depth);
+					previous = Arrays.copyOf(previous, 2 * depth);
+				}
+				nodes[depth] = node;
+				parents[depth] = parent;
+				previous[depth++] = prev;
+				parent = node;
+				prev = null;
+				node = node.firstChild;
+			}
+			if (depth == 0) {
+				return;
+			}
+			node = nodes[--depth];
+			parent = parents[depth];
+			prev = previous[depth];
+			nodes[depth] = parents[depth] = previous[depth] = null;
+			prev = visitor.leave(node, parent, prev);
+			if (visitor.stopped) {
+				return;
+			}
+			node = prev.sibling;
+		}
+	}
+}
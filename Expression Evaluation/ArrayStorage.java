@@ -0,0 +1,393 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The items of an array, kept in whichever of three layouts suits its size and how
+ * many of its items are set: a plain int array, a hash map from index to item for
+ * arrays that are mostly zero, or a memory-mapped file for arrays too large for the
+ * heap. Items that were never set are 0, and indexes out of range throw
+ * <code>ArrayIndexOutOfBoundsException</code>, as with <code>Array.values</code>.
+ *
+ * Storage should be closed when it is no longer needed, which deletes the file of
+ * mapped storage; closing the other layouts does nothing.
+ *
+ */
+public abstract class ArrayStorage implements Closeable {
+
+	/**
+	 * Longest array kept on the heap as a plain int array (256 MB)
+	 */
+	public static final int MAX_DENSE_LENGTH = 1 << 26;
+
+	/**
+	 * An array is sparse if at most one in this many of its items are set
+	 */
+	public static final int SPARSE_RATIO = 8;
+
+	/**
+	 * Shortest array that may be stored sparse - shorter ones cost little as plain int
+	 * arrays, and stay usable by <code>Expression.evaluate</code>
+	 */
+	public static final int MIN_SPARSE_LENGTH = 1 << 16;
+
+	final int length;
+
+	ArrayStorage(int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Negative array length: " + length);
+		}
+		this.length = length;
+	}
+
+	/**
+	 * Returns empty storage in the layout that suits an array.
+	 *
+	 * @param length Number of items in the array
+	 * @param entries Number of items that will be set, at most
+	 * @return Storage with every item 0
+	 * @throws IOException If a file for mapped storage cannot be made
+	 */
+	public static ArrayStorage create(int length, int entries) throws IOException {
+		if (length >= MIN_SPARSE_LENGTH && (long) entries * SPARSE_RATIO <= length) {
+			return new Sparse(length, entries);
+		}
+		if (length <= MAX_DENSE_LENGTH) {
+			return new Dense(new int[length]);
+		}
+		return new Mapped(length);
+	}
+
+	/**
+	 * Returns empty storage for an array whose number of set items is not known in
+	 * advance. An array too long for the heap is mapped - unset items of the file take no
+	 * disk space where sparse files are supported. An array long enough to be sparse
+	 * starts out sparse; set its items with {@link #put} so that it becomes a plain int
+	 * array once too many of them are set.
+	 *
+	 * @param length Number of items in the array
+	 * @return Storage with every item 0
+	 * @throws IOException If a file for mapped storage cannot be made
+	 */
+	public static ArrayStorage create(int length) throws IOException {
+		if (length > MAX_DENSE_LENGTH) {
+			return new Mapped(length);
+		}
+		if (length >= MIN_SPARSE_LENGTH) {
+			return new Sparse(length, 16);
+		}
+		return new Dense(new int[length]);
+	}
+
+	/**
+	 * Sets an item of storage made by {@link #create(int)}, moving sparse storage to a
+	 * plain int array once more than one in <code>SPARSE_RATIO</code> of its items are
+	 * set.
+	 *
+	 * @param storage The storage
+	 * @param index Index of an item
+	 * @param value New value of the item
+	 * @return The storage now holding the items - the same one unless it was moved
+	 */
+	public static ArrayStorage put(ArrayStorage storage, int index, int value) {
+		storage.set(index, value);
+		if (storage instanceof Sparse) {
+			Sparse sparse = (Sparse) storage;
+			if ((long) sparse.size * SPARSE_RATIO > sparse.length) {
+				return sparse.toDense();
+			}
+		}
+		return storage;
+	}
+
+	/**
+	 * @return Number of items
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @param index Index of an item
+	 * @return The item at that index
+	 */
+	public abstract int get(int index);
+
+	/**
+	 * @param index Index of an item
+	 * @param value New value of the item
+	 */
+	public abstract void set(int index, int value);
+
+	/**
+	 * Releases what the storage holds outside the heap. Storage must not be used after it
+	 * is closed.
+	 *
+	 * @throws IOException If a file cannot be deleted
+	 */
+	public void close() throws IOException {
+	}
+
+	final void check(int index) {
+		if (index < 0 || index >= length) {
+			throw new ArrayIndexOutOfBoundsException("Index " + index
+					+ " out of bounds for length " + length);
+		}
+	}
+
+	/**
+	 * Items in a plain int array
+	 */
+	public static final class Dense extends ArrayStorage {
+		final int[] values;
+
+		/**
+		 * Wraps an array of items, without copying it
+		 *
+		 * @param values The items
+		 */
+		public Dense(int[] values) {
+			super(values.length);
+			this.values = values;
+		}
+
+		/**
+		 * @return The items, not copied
+		 */
+		public int[] values() {
+			return values;
+		}
+
+		public int get(int index) {
+			return values[index];
+		}
+
+		public void set(int index, int value) {
+			values[index] = value;
+		}
+	}
+
+	/**
+	 * Items that are set, in an open-addressing hash map from index to item
+	 */
+	public static final class Sparse extends ArrayStorage {
+		private static final int EMPTY = -1;
+
+		private int[] keys;
+		private int[] items;
+		private int size;
+
+		/**
+		 * @param length Number of items in the array
+		 * @param entries Number of items expected to be set
+		 */
+		public Sparse(int length, int entries) {
+			super(length);
+			int capacity = Integer.highestOneBit(Math.max(4, 2 * entries - 1)) << 1;
+			keys = new int[capacity];
+			Arrays.fill(keys, EMPTY);
+			items = new int[capacity];
+		}
+
+		/**
+		 * @return Number of items that have been set
+		 */
+		public int size() {
+			return size;
+		}
+
+		public int get(int index) {
+			check(index);
+			int mask = keys.length - 1;
+			for (int slot = mix(index) & mask;; slot = (slot + 1) & mask) {
+				if (keys[slot] == index) {
+					return items[slot];
+				}
+				if (keys[slot] == EMPTY) {
+					return 0;
+				}
+			}
+		}
+
+		public void set(int index, int value) {
+			check(index);
+			int mask = keys.length - 1;
+			int slot = mix(index) & mask;
+			while (keys[slot] != EMPTY && keys[slot] != index) {
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == EMPTY) {
+				if (2 * (size + 1) > keys.length) {
+					grow();
+					set(index, value);
+					return;
+				}
+				keys[slot] = index;
+				size++;
+			}
+			items[slot] = value;
+		}
+
+		/**
+		 * @return The items in a plain int array
+		 */
+		Dense toDense() {
+			int[] values = new int[length];
+			for (int k = 0; k < keys.length; k++) {
+				if (keys[k] != EMPTY) {
+					values[keys[k]] = items[k];
+				}
+			}
+			return new Dense(values);
+		}
+
+		private void grow() {
+			int[] oldKeys = keys, oldItems = items;
+			keys = new int[2 * oldKeys.length];
+			Arrays.fill(keys, EMPTY);
+			items = new int[keys.length];
+			int mask = keys.length - 1;
+			for (int k = 0; k < oldKeys.length; k++) {
+				if (oldKeys[k] != EMPTY) {
+					int slot = mix(oldKeys[k]) & mask;
+					while (keys[slot] != EMPTY) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[k];
+					items[slot] = oldItems[k];
+				}
+			}
+		}
+
+		private static int mix(int index) {
+			int h = index * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+
+	/**
+	 * Items in a memory-mapped file, which the operating system pages in as they are
+	 * used. The file starts out as a hole, so unset items take no disk space on file
+	 * systems that support sparse files.
+	 */
+	public static final class Mapped extends ArrayStorage {
+		/**
+		 * Items per mapping - a mapping can be at most 2 GB
+		 */
+		private static final int CHUNK_SHIFT = 28;
+		private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+		private IntBuffer[] chunks;
+
+		/**
+		 * The file, if it was made for this storage and is deleted on close
+		 */
+		private Path temporary;
+
+		private final Path file;
+
+		/**
+		 * Maps a new temporary file, which is deleted when the storage is closed, or at
+		 * the latest when the VM exits.
+		 *
+		 * @param length Number of items in the array
+		 * @throws IOException If the file cannot be made or mapped
+		 */
+		public Mapped(int length) throws IOException {
+			this(temporaryFile(length), length, true);
+		}
+
+		/**
+		 * Maps a file of items in native byte order, extending it with zeros if it is
+		 * shorter than the array.
+		 *
+		 * @param file The file
+		 * @param length Number of items in the array
+		 * @throws IOException If the file cannot be opened or mapped
+		 */
+		public Mapped(Path file, int length) throws IOException {
+			this(file, length, false);
+		}
+
+		/**
+		 * Maps a file, deleting it again if it is temporary and cannot be mapped.
+		 */
+		private Mapped(Path file, int length, boolean temporary) throws IOException {
+			super(length);
+			this.file = file;
+			if (temporary) {
+				this.temporary = file;
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+				chunks = new IntBuffer[(int) (((long) length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+				for (int k = 0; k < chunks.length; k++) {
+					long first = (long) k << CHUNK_SHIFT;
+					long count = Math.min(1L << CHUNK_SHIFT, length - first);
+					chunks[k] = channel.map(FileChannel.MapMode.READ_WRITE, 4 * first, 4 * count)
+							.order(ByteOrder.nativeOrder()).asIntBuffer();
+				}
+			} catch (IOException | RuntimeException | Error e) {
+				try {
+					close();
+				} catch (IOException suppressed) {
+					// the file is still deleted on exit
+					e.addSuppressed(suppressed);
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * Makes the file for <code>Mapped(int)</code>, checking the length first, as a
+		 * file made for a bad length would be left behind.
+		 */
+		private static Path temporaryFile(int length) throws IOException {
+			if (length < 0) {
+				throw new IllegalArgumentException("Negative array length: " + length);
+			}
+			Path file = Files.createTempFile("array", ".items");
+			file.toFile().deleteOnExit();
+			return file;
+		}
+
+		public int get(int index) {
+			check(index);
+			return chunks()[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+		}
+
+		public void set(int index, int value) {
+			check(index);
+			chunks()[index >>> CHUNK_SHIFT].put(index & CHUNK_MASK, value);
+		}
+
+		/**
+		 * Drops the mappings, and deletes the file if it was made for this storage. The
+		 * mapped memory is returned to the system once the mappings are collected.
+		 */
+		public void close() throws IOException {
+			chunks = null;
+			if (temporary != null) {
+				Path delete = temporary;
+				temporary = null;
+				Files.deleteIfExists(delete);
+			}
+		}
+
+		private IntBuffer[] chunks() {
+			IntBuffer[] mapped = chunks;
+			if (mapped == null) {
+				throw new IllegalStateException("Storage for " + file + " is closed");
+			}
+			return mapped;
+		}
+	}
+}
@@ -0,0 +1,383 @@
+package app;
+
+import java.util.ArrayList;
+
+import structures.Stack;
+
+/**
+ * An expression parsed once into a postfix program, which can then be evaluated any
+ * number of times against new variable and array values without looking at the
+ * expression text again.
+ *
+ * The program is produced by the same operator precedence rules as
+ * <code>Expression.evaluate</code>, and runs the same float arithmetic in the same
+ * order, so both give identical results.
+ *
+ */
+public final class CompiledExpression {
+
+	/**
+	 * Push constants[operand]
+	 */
+	static final int CONST = 0;
+
+	/**
+	 * Push the value of the variable in slot operand
+	 */
+	static final int VAR = 1;
+
+	/**
+	 * Pop an index, push the item at that index of the array in slot operand
+	 */
+	static final int ELEM = 2;
+
+	/**
+	 * Pop two values, push the result of the operator
+	 */
+	static final int ADD = 3, SUB = 4, MUL = 5, DIV = 6;
+
+	/**
+	 * Push the value saved in temporary operand
+	 */
+	static final int LOAD = 7;
+
+	/**
+	 * Save the top of the stack in temporary operand, without popping it
+	 */
+	static final int STORE = 8;
+
+	/**
+	 * The expression text
+	 */
+	final String expr;
+
+	/**
+	 * Instructions - opcodes and their operands
+	 */
+	final int[] ops, operands;
+
+	/**
+	 * Values of the literals in the expression
+	 */
+	final float[] constants;
+
+	/**
+	 * Slots of the simple variables and arrays, in order of first appearance
+	 */
+	final SymbolTable symbols;
+
+	/**
+	 * Deepest the operand stack gets while running the program
+	 */
+	final int maxStack;
+
+	/**
+	 * Number of temporaries the program saves values in
+	 */
+	final int temps;
+
+	private CompiledExpression(String expr, int[] ops, int[] operands, float[] constants,
+			SymbolTable symbols) {
+		this.expr = expr;
+		this.ops = ops;
+		this.operands = operands;
+		this.constants = constants;
+		this.symbols = symbols;
+		int depth = 0, max = 0, saved = 0;
+		for (int pc = 0; pc < ops.length; pc++) {
+			int op = ops[pc];
+			if (op == CONST || op == VAR || op == LOAD) {
+				depth++;
+			} else if (op == STORE) {
+				saved = Math.max(saved, operands[pc] + 1);
+			} else if (op != ELEM) {
+				depth--;
+			}
+			max = Math.max(max, depth);
+		}
+		maxStack = max;
+		temps = saved;
+	}
+
+	/**
+	 * Parses an expression into a program.
+	 *
+	 * @param expr The expression
+	 * @return The compiled expression
+	 */
+	public static CompiledExpression compile(String expr) {
+		Builder builder = new Builder();
+		Stack<Character> operators = new Stack<Character>();
+		Stack<Integer> arraySlots = new Stack<Integer>();
+		TokenStream tokens = TokenStream.of(expr);
+		for (int k = 0; k < tokens.count; k++) {
+			byte kind = tokens.kind(k);
+			if (kind == TokenStream.NUMBER) {
+				builder.constant(tokens.number(k));
+			} else if (kind == TokenStream.NAME) {
+				builder.variable(tokens.name(k));
+			} else if (kind == TokenStream.ARRAY) {
+				arraySlots.push(builder.arraySlot(tokens.name(k)));
+				operators.push('[');
+			} else {
+				char c = tokens.operator(k);
+				if (c == '(') {
+					operators.push('(');
+				} else if (c == ')') {
+					while (operators.peek() != '(') {
+						builder.operator(operators.pop());
+					}
+					operators.pop();
+				} else if (c == ']') {
+					while (operators.peek() != '[') {
+						builder.operator(operators.pop());
+					}
+					operators.pop();
+					builder.element(arraySlots.pop());
+				} else {
+					while (!operators.isEmpty() && Expression.hasPriority(operators.peek(), c)) {
+						builder.operator(operators.pop());
+					}
+					operators.push(c);
+				}
+			}
+		}
+		while (!operators.isEmpty()) {
+			builder.operator(operators.pop());
+		}
+		return builder.build(expr);
+	}
+
+	/**
+	 * Returns an equivalent program with constant subexpressions folded and repeated
+	 * subexpressions, array lookups included, computed only once. Every value is
+	 * still computed with the same float operations on the same operands, so the
+	 * result is identical to that of this program.
+	 *
+	 * @return The optimized expression, or this one if there is nothing to improve
+	 */
+	public CompiledExpression optimize() {
+		return ExpressionOptimizer.optimize(this);
+	}
+
+	/**
+	 * Evaluates the expression.
+	 *
+	 * @param vars The variables array list, with values for all variables in the expression
+	 * @param arrays The arrays array list, with values for all array items
+	 * @return Result of evaluation
+	 * @throws IllegalArgumentException If an array in the expression is not in arrays
+	 */
+	public float evaluate(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		return evaluate(symbols.values(vars), symbols.items(arrays));
+	}
+
+	/**
+	 * Evaluates the expression with values given by slot.
+	 *
+	 * @param values Values of the simple variables, indexed by slot
+	 * @param items Items of the arrays, indexed by slot
+	 * @return Result of evaluation
+	 */
+	public float evaluate(float[] values, int[][] items) {
+		// temporaries live above the operand stack
+		float[] stack = PrimitiveStacks.numbers(maxStack + temps);
+		int top = -1;
+		for (int pc = 0; pc < ops.length; pc++) {
+			switch (ops[pc]) {
+			case CONST:
+				stack[++top] = constants[operands[pc]];
+				break;
+			case VAR:
+				stack[++top] = values[operands[pc]];
+				break;
+			case ELEM:
+				stack[top] = items[operands[pc]][(int) stack[top]];
+				break;
+			case ADD:
+				stack[top - 1] = stack[top - 1] + stack[top];
+				top--;
+				break;
+			case SUB:
+				stack[top - 1] = stack[top - 1] - stack[top];
+				top--;
+				break;
+			case MUL:
+				stack[top - 1] = stack[top - 1] * stack[top];
+				top--;
+				break;
+			case DIV:
+				stack[top - 1] = stack[top - 1] / stack[top];
+				top--;
+				break;
+			case LOAD:
+				stack[++top] = stack[maxStack + operands[pc]];
+				break;
+			case STORE:
+				stack[maxStack + operands[pc]] = stack[top];
+				break;
+			}
+		}
+		return stack[top];
+	}
+
+	/**
+	 * Evaluates the expression with values given by slot, reading array items from
+	 * storage of any layout.
+	 *
+	 * @param values Values of the simple variables, indexed by slot
+	 * @param storages Storage of the arrays, indexed by slot
+	 * @return Result of evaluation
+	 */
+	public float evaluate(float[] values, ArrayStorage[] storages) {
+		float[] stack = PrimitiveStacks.numbers(maxStack + temps);
+		int top = -1;
+		for (int pc = 0; pc < ops.length; pc++) {
+			switch (ops[pc]) {
+			case CONST:
+				stack[++top] = constants[operands[pc]];
+				break;
+			case VAR:
+				stack[++top] = values[operands[pc]];
+				break;
+			case ELEM:
+				stack[top] = storages[operands[pc]].get((int) stack[top]);
+				break;
+			case ADD:
+				stack[top - 1] = stack[top - 1] + stack[top];
+				top--;
+				break;
+			case SUB:
+				stack[top - 1] = stack[top - 1] - stack[top];
+				top--;
+				break;
+			case MUL:
+				stack[top - 1] = stack[top - 1] * stack[top];
+				top--;
+				break;
+			case DIV:
+				stack[top - 1] = stack[top - 1] / stack[top];
+				top--;
+				break;
+			case LOAD:
+				stack[++top] = stack[maxStack + operands[pc]];
+				break;
+			case STORE:
+				stack[maxStack + operands[pc]] = stack[top];
+				break;
+			}
+		}
+		return stack[top];
+	}
+
+	/**
+	 * Returns the slots of the simple variables and arrays in the expression, numbered in
+	 * the order <code>Expression.makeVariableLists</code> would add them to its lists.
+	 *
+	 * @return The symbol table of this expression
+	 */
+	public SymbolTable symbols() {
+		return symbols;
+	}
+
+	/**
+	 * Returns new variables, one per simple variable in the expression, in the order
+	 * <code>Expression.makeVariableLists</code> would create them.
+	 *
+	 * @return New list of variables, all with value 0
+	 */
+	public ArrayList<Variable> variables() {
+		return symbols.variables();
+	}
+
+	/**
+	 * Returns new arrays, one per array in the expression, in the order
+	 * <code>Expression.makeVariableLists</code> would create them.
+	 *
+	 * @return New list of arrays, with no values
+	 */
+	public ArrayList<Array> arrays() {
+		return symbols.arrays();
+	}
+
+	public String toString() {
+		return expr;
+	}
+
+	/**
+	 * Collects instructions, constants and symbol slots while an expression is parsed
+	 */
+	static class Builder {
+		private int[] ops = new int[16];
+		private int[] operands = new int[16];
+		private int size;
+		private float[] constants = new float[4];
+		private int constantCount;
+		private final SymbolTable symbols;
+
+		Builder() {
+			this(new SymbolTable());
+		}
+
+		/**
+		 * Initializes a builder that adds to an existing symbol table
+		 */
+		Builder(SymbolTable symbols) {
+			this.symbols = symbols;
+		}
+
+		void constant(float value) {
+			if (constantCount == constants.length) {
+				constants = java.util.Arrays.copyOf(constants, 2 * constantCount);
+			}
+			constants[constantCount] = value;
+			emit(CONST, constantCount++);
+		}
+
+		void variable(String name) {
+			emit(VAR, symbols.addVariable(name));
+		}
+
+		int arraySlot(String name) {
+			return symbols.addArray(name);
+		}
+
+		void element(int arraySlot) {
+			emit(ELEM, arraySlot);
+		}
+
+		void operator(char op) {
+			switch (op) {
+			case '+':
+				emit(ADD, 0);
+				break;
+			case '-':
+				emit(SUB, 0);
+				break;
+			case '*':
+				emit(MUL, 0);
+				break;
+			case '/':
+				emit(DIV, 0);
+				break;
+			default:
+				throw new IllegalArgumentException("Unbalanced " + op + " in expression");
+			}
+		}
+
+		void emit(int op, int operand) {
+			if (size == ops.length) {
+				ops = java.util.Arrays.copyOf(ops, 2 * size);
+				operands = java.util.Arrays.copyOf(operands, 2 * size);
+			}
+			ops[size] = op;
+			operands[size++] = operand;
+		}
+
+		CompiledExpression build(String expr) {
+			return new CompiledExpression(expr, java.util.Arrays.copyOf(ops, size),
+					java.util.Arrays.copyOf(operands, size),
+					java.util.Arrays.copyOf(constants, constantCount), symbols);
+		}
+	}
+}
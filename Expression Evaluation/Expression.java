@@ -4,11 +4,33 @@ import java.io.*;
 import java.util.*;
 import java.util.regex.*;
 
-import structures.Stack;
-
 public class Expression {
 
 	public static String delims = " \t*+-/()[]";
+
+	/**
+	 * Cache that makeVariableLists and evaluate go through, or null for none
+	 */
+	private static volatile ExpressionCache cache;
+
+	/**
+	 * Routes makeVariableLists and evaluate through a cache of compiled expressions, or
+	 * stops doing so.
+	 *
+	 * @param cache Cache to use, or null to parse every expression
+	 */
+	public static void setCache(ExpressionCache cache) {
+		Expression.cache = cache;
+	}
+
+	/**
+	 * Returns the cache that makeVariableLists and evaluate go through.
+	 *
+	 * @return The cache, or null if there is none
+	 */
+	public static ExpressionCache getCache() {
+		return cache;
+	}
 			
     /**
      * Populates the vars list with simple variables, and arrays lists with arrays
@@ -27,47 +49,24 @@ public class Expression {
     	/** DO NOT create new vars and arrays - they are already created before being sent in
     	 ** to this method - you just need to fill them in.
     	 **/
-    	ArrayList<String> variablesVisited = new ArrayList<String>();
-		ArrayList<String> arraysVisited = new ArrayList<String>();
-		for (int i = 0; i < expr.length(); i++){
-			if (Character.isLetter(expr.charAt(i))){
-				boolean nameIsVariable = true;
-				String name = "";
-				while (i < expr.length()){
-					if (Character.isLetter(expr.charAt(i))){
-						name = name + expr.charAt(i);
-					} else if (expr.charAt(i) == '['){
-						//the name must be the name of an array
-						nameIsVariable = false;
-						break;
-					} else {
-						//If it touches any character that is not a letter the name has ended and we can exit the loop
-						break;
-					}
-					i++;
+    	ExpressionCache c = cache;
+    	if (c != null) {
+    		c.makeVariableLists(expr, vars, arrays);
+    		return;
+    	}
+    	HashSet<String> variablesVisited = new HashSet<String>();
+		HashSet<String> arraysVisited = new HashSet<String>();
+		//The tokenizer has already split out the names, and tells which ones are followed by a [
+		TokenStream tokens = TokenStream.of(expr);
+		for (int k = 0; k < tokens.count; k++){
+			//Add the name only the first time it is seen - the sets answer in constant time
+			if (tokens.kind(k) == TokenStream.NAME){
+				if (variablesVisited.add(tokens.name(k))){
+					vars.add(new Variable(tokens.name(k)));
 				}
-				//Check if variable name was already checked and added before
-				boolean nameCheckedAlready = false;
-				if (nameIsVariable){
-					for (int k = 0; k < variablesVisited.size(); k++){
-						if (variablesVisited.get(k).equals(name)){
-							nameCheckedAlready = true;
-						}
-					}
-					if (!nameCheckedAlready){
-						vars.add(new Variable(name));
-						variablesVisited.add(name);
-					}
-				} else {
-					for (int k = 0; k < arraysVisited.size(); k++){
-						if (arraysVisited.get(k).equals(name)){
-							nameCheckedAlready = true;
-						}
-					}
-					if (!nameCheckedAlready){
-						arrays.add(new Array(name));
-						arraysVisited.add(name);
-					}
+			} else if (tokens.kind(k) == TokenStream.ARRAY){
+				if (arraysVisited.add(tokens.name(k))){
+					arrays.add(new Array(tokens.name(k)));
 				}
 			}
 		}
@@ -83,22 +82,29 @@ public class Expression {
     public static void 
     loadVariableValues(Scanner sc, ArrayList<Variable> vars, ArrayList<Array> arrays) 
     throws IOException {
+    	// index the lists by name once, instead of an indexOf scan per line
+    	HashMap<String,Integer> varIndex = new HashMap<String,Integer>();
+    	for (int k = vars.size() - 1; k >= 0; k--) {
+    		varIndex.put(vars.get(k).name, k);
+    	}
+    	HashMap<String,Integer> arrayIndex = new HashMap<String,Integer>();
+    	for (int k = arrays.size() - 1; k >= 0; k--) {
+    		arrayIndex.put(arrays.get(k).name, k);
+    	}
         while (sc.hasNextLine()) {
             StringTokenizer st = new StringTokenizer(sc.nextLine().trim());
             int numTokens = st.countTokens();
             String tok = st.nextToken();
-            Variable var = new Variable(tok);
-            Array arr = new Array(tok);
-            int vari = vars.indexOf(var);
-            int arri = arrays.indexOf(arr);
-            if (vari == -1 && arri == -1) {
+            Integer vari = varIndex.get(tok);
+            Integer arri = arrayIndex.get(tok);
+            if (vari == null && arri == null) {
             	continue;
             }
             int num = Integer.parseInt(st.nextToken());
             if (numTokens == 2) { // scalar symbol
                 vars.get(vari).value = num;
             } else { // array symbol
-            	arr = arrays.get(arri);
+            	Array arr = arrays.get(arri);
             	arr.values = new int[num];
                 // following are (index,val) pairs
                 while (st.hasMoreTokens()) {
@@ -118,122 +124,81 @@ public class Expression {
      * @param vars The variables array list, with values for all variables in the expression
      * @param arrays The arrays array list, with values for all array items
      * @return Result of evaluation
+     * @throws IllegalArgumentException If an array in the expression has no values
      */
     public static float 
     evaluate(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
     	/** COMPLETE THIS METHOD **/
-    	Stack<Float> numbers = new Stack<Float>();
-		Stack<Character> operators = new Stack<Character>();
-		Stack<String> arrayNames = new Stack<String>();
-		char[] arr = expr.toCharArray();
-		for (int i = 0; i < arr.length; i++) {
-			//If character is a number
-			if (Character.isDigit(arr[i])) {
-				//We need to check if the number has multiple digits
-				String num = "";
-				while (i < arr.length) {
-					if (Character.isDigit(arr[i])) {
-						num += arr[i];
-					}
-					else {
-						i--; // We decrement i because before this point i was pointing to a character after the number, if we dont decrement i, the for loop will double increment i
-						break;
-					}
-					i++;
-				}
-				numbers.push(new Float(num));
-			} else if (Character.isLetter(arr[i])){
-				//The name could be a variable name or an array name
-				//We have to do separate things for each situation
-				//We assume it is a variable
-				boolean isVariable = true;
-				String name = "";
-				while (i < arr.length){
-					if (Character.isLetter(arr[i])) {
-						name += arr[i];
-					}
-					else if (arr[i] == '['){
-						//If this happens we know it's an array, we can add the name to the arrayname stack for future reference and push an [ and break
-						arrayNames.push(name);
-						operators.push('[');
-						isVariable = false;
-						break;
-					}
-					else {
-						//If we hit a character not a letter nor a [ we know the variable name ended and we can break out
-						i--; // If we don't do this the for loop will double increment i
-						break;
-					}
-					i++;
-				}
-				//Now we need to find the value of the variable and add it to the numbers Stack. We only do this is the name is a variable name
-				if (isVariable) {
-					int value = 0;
-					for (int k = 0; k < vars.size(); k++){
-						if (vars.get(k).name.equals(name)){
-							value = vars.get(k).value;
-						}
-					}
-					numbers.push(new Float(value));
-				}
-				//If it was an array we do nothing
-			} else if (arr[i] == '(') {
-				operators.push('(');
-			} else if (arr[i] == ')') {
-				while (operators.peek() != '('){
+    	ExpressionCache c = cache;
+    	if (c != null) {
+    		return c.evaluate(expr, vars, arrays);
+    	}
+    	//Numbers, operators and arrays waiting for their ] go on this thread's primitive stacks, so nothing is boxed
+    	PrimitiveStacks stacks = PrimitiveStacks.get();
+		//Walk the tokens - the same ones makeVariableLists used, if it was called on this expression just before
+		TokenStream tokens = TokenStream.of(expr);
+		//Every name was resolved to a slot when the expression was tokenized - read the lists into arrays by slot once, then each reference is an index
+		float[] values = stacks.values(tokens.symbols.variableCount());
+		tokens.symbols.values(vars, values);
+		Array[] arraysBySlot = stacks.arraySlots(tokens.symbols.arrayCount());
+		tokens.symbols.arrays(arrays, arraysBySlot);
+		for (int k = 0; k < tokens.count; k++) {
+			byte kind = tokens.kind(k);
+			if (kind == TokenStream.NUMBER) {
+				//The tokenizer has already read all of the digits and parsed the number
+				stacks.pushNumber(tokens.number(k));
+			} else if (kind == TokenStream.NAME) {
+				//Now we need to find the value of the variable and add it to the numbers Stack
+				stacks.pushNumber(values[tokens.slot(k)]);
+			} else if (kind == TokenStream.ARRAY) {
+				//If this happens we know it's an array, we can add the array to the array stack for future reference and push an [
+				stacks.pushArray(arraysBySlot[tokens.slot(k)]);
+				stacks.pushOperator('[');
+			} else if (tokens.operator(k) == '(') {
+				stacks.pushOperator('(');
+			} else if (tokens.operator(k) == ')') {
+				while (stacks.peekOperator() != '('){
 					//We need to apply the operator to the two most recent values put in numbers and push it back in
 					//MAJOR Note: it should be value2 (op) value 1
-					Float value1 = numbers.pop();
-					Float value2 = numbers.pop();
-					Float result = calculate(operators.pop(), value1, value2); // I can simplify this later
-					numbers.push(result);
+					stacks.apply(stacks.popOperator());
 				}
-				operators.pop();
-			} else if (arr[i] == '+' || arr[i] == '-' || arr[i] == '*' || arr[i] == '/') {
-				char op = arr[i];
-
-				while (!operators.isEmpty() && hasPriority(operators.peek(), op)){
-					//We need to pop the recent operator in the Stack, apply it to the most recent numbers, and push it back in
-					Float value1 = numbers.pop();
-					Float value2 = numbers.pop();
-					Float result = calculate(operators.pop(), value1, value2);
-					numbers.push(result);
-				}
-				operators.push(op);
-			} else if (arr[i] == ']'){
+				stacks.popOperator();
+			} else if (tokens.operator(k) == ']'){
 				//Same thing with () we keep popping operators and applying them to numbers until we find the closest square bracket
-				while (operators.peek() != '['){
-					Float value1 = numbers.pop();
-					Float value2 = numbers.pop();
-					Float result = calculate(operators.pop(), value1, value2);
-					numbers.push(result);
+				while (stacks.peekOperator() != '['){
+					stacks.apply(stacks.popOperator());
 				}
 				//Now we can finally pop the closing ] in the Operator Stack and replace the recent number on the Stack with the value of the array at that index
-				operators.pop();
-				float topNumber = numbers.pop();
+				stacks.popOperator();
+				float topNumber = stacks.popNumber();
 				int index = (int)topNumber;
-				String nameOfArray = arrayNames.pop();
-				for (int k = 0; k < arrays.size(); k++){
-					if (arrays.get(k).name.equals(nameOfArray)){
-						int valueToPush = arrays.get(k).values[index];
-						numbers.push(new Float(valueToPush));
-						break;
+				Array array = stacks.popArray();
+				if (array != null){
+					//Sparse and mapped arrays from ValueLoader have no values - they are read through their storage
+					if (array.values == null){
+						throw new IllegalArgumentException("No values for array " + array.name);
 					}
+					stacks.pushNumber(array.values[index]);
+				}
+			} else {
+				char op = tokens.operator(k);
+
+				while (stacks.hasOperators() && hasPriority(stacks.peekOperator(), op)){
+					//We need to pop the recent operator in the Stack, apply it to the most recent numbers, and push it back in
+					stacks.apply(stacks.popOperator());
 				}
+				stacks.pushOperator(op);
 			}
 		}
 
 		//Now if there is still stuff inside the operators Stack, apply them and return the final value
-		while (!operators.isEmpty()){
-			Float value1 = numbers.pop();
-			Float value2 = numbers.pop();
-			Float result = calculate(operators.pop(), value1, value2);
-			numbers.push(result);
+		while (stacks.hasOperators()){
+			stacks.apply(stacks.popOperator());
 		}
-		return numbers.pop();
+		return stacks.popNumber();
     }
 
-	private static boolean hasPriority(char a, char b){
+	static boolean hasPriority(char a, char b){
 		if (a == '(' || a == ')' || a == '[' || a == ']'){
 			return false;
 		}
@@ -244,7 +209,7 @@ public class Expression {
 		}
 	}
 
-	private static Float calculate(char op, Float a, Float b){
+	static float calculate(char op, float a, float b){
 		if (op == '*'){
 			return b * a;
 		} else if (op == '/'){
@@ -254,7 +219,7 @@ public class Expression {
 		} else if (op == '-'){
 			return b - a;
 		}
-		return null;
+		throw new IllegalArgumentException("Unbalanced " + op + " in expression");
 	}
 
 }
@@ -0,0 +1,303 @@
+package app;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one compiled expression over many rows of bindings, given in columns: one
+ * array of values per simple variable, and for each array either one set of items
+ * shared by all rows or one set of items per row.
+ *
+ * The program runs an instruction at a time over a block of rows, so every arithmetic
+ * step is a plain loop over a float array that the JIT can vectorize. Each row gets
+ * exactly the float arithmetic <code>CompiledExpression.evaluate</code> would give it.
+ * Large batches are split into ranges of rows across the threads of a
+ * <code>ForkJoinPool</code>.
+ *
+ */
+public class ExpressionBatch {
+
+	/**
+	 * Below this many rows, evaluate runs on the calling thread
+	 */
+	public static final int PARALLEL_CUTOFF = 1 << 15;
+
+	/**
+	 * Rows run through the program together
+	 */
+	static final int BLOCK = 256;
+
+	/**
+	 * Smallest range of rows handled by one task
+	 */
+	static final int GRAIN = 1 << 13;
+
+	private final CompiledExpression expr;
+	private final int rows;
+	private final float[][] floatColumns;
+	private final int[][] intColumns;
+	private final int[][] sharedItems;
+	private final int[][][] rowItems;
+
+	/**
+	 * Initializes a batch with no columns set. Simple variables that are never given a
+	 * column are 0 in every row, as missing variables are in <code>Expression.evaluate</code>.
+	 *
+	 * @param expr The compiled expression
+	 * @param rows Number of rows
+	 */
+	public ExpressionBatch(CompiledExpression expr, int rows) {
+		if (rows < 0) {
+			throw new IllegalArgumentException("Negative number of rows: " + rows);
+		}
+		this.expr = expr;
+		this.rows = rows;
+		floatColumns = new float[expr.symbols.variableCount()][];
+		intColumns = new int[expr.symbols.variableCount()][];
+		sharedItems = new int[expr.symbols.arrayCount()][];
+		rowItems = new int[expr.symbols.arrayCount()][][];
+	}
+
+	/**
+	 * @return Number of rows
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * Sets the values of a simple variable, one per row. Names that are not in the
+	 * expression are ignored.
+	 *
+	 * @param name Variable name
+	 * @param values Values, indexed by row
+	 * @return This batch
+	 */
+	public ExpressionBatch column(String name, float[] values) {
+		int slot = expr.symbols.variableSlot(name);
+		if (slot >= 0) {
+			checkRows(name, values.length);
+			floatColumns[slot] = values;
+			intColumns[slot] = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the values of a simple variable, one per row. Names that are not in the
+	 * expression are ignored.
+	 *
+	 * @param name Variable name
+	 * @param values Values, indexed by row
+	 * @return This batch
+	 */
+	public ExpressionBatch column(String name, int[] values) {
+		int slot = expr.symbols.variableSlot(name);
+		if (slot >= 0) {
+			checkRows(name, values.length);
+			intColumns[slot] = values;
+			floatColumns[slot] = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the items of an array, the same for every row. Names that are not in the
+	 * expression are ignored.
+	 *
+	 * @param name Array name
+	 * @param items Array items
+	 * @return This batch
+	 */
+	public ExpressionBatch array(String name, int[] items) {
+		int slot = expr.symbols.arraySlot(name);
+		if (slot >= 0) {
+			sharedItems[slot] = items;
+			rowItems[slot] = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the items of an array, one set per row. Names that are not in the
+	 * expression are ignored.
+	 *
+	 * @param name Array name
+	 * @param items Array items, indexed by row
+	 * @return This batch
+	 */
+	public ExpressionBatch array(String name, int[][] items) {
+		int slot = expr.symbols.arraySlot(name);
+		if (slot >= 0) {
+			checkRows(name, items.length);
+			rowItems[slot] = items;
+			sharedItems[slot] = null;
+		}
+		return this;
+	}
+
+	private void checkRows(String name, int length) {
+		if (length < rows) {
+			throw new IllegalArgumentException("Column " + name + " has " + length
+					+ " rows, needs " + rows);
+		}
+	}
+
+	/**
+	 * Evaluates every row, using the common pool for large batches.
+	 *
+	 * @param out Receives the result of each row; may be null
+	 * @return out, or a new array if out was null
+	 * @throws IllegalArgumentException If an array in the expression has no items
+	 */
+	public float[] evaluate(float[] out) {
+		return evaluate(out, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Evaluates every row.
+	 *
+	 * @param out Receives the result of each row; may be null
+	 * @param pool Pool that runs the work
+	 * @return out, or a new array if out was null
+	 * @throws IllegalArgumentException If an array in the expression has no items
+	 */
+	public float[] evaluate(float[] out, ForkJoinPool pool) {
+		if (out == null) {
+			out = new float[rows];
+		}
+		checkRows("out", out.length);
+		for (int slot = 0; slot < sharedItems.length; slot++) {
+			if (sharedItems[slot] == null && rowItems[slot] == null) {
+				throw new IllegalArgumentException("No values for array " + expr.symbols.arrayName(slot));
+			}
+		}
+		if (rows < PARALLEL_CUTOFF || pool.getParallelism() == 1) {
+			run(0, rows, out);
+		} else {
+			int grain = Math.max(GRAIN, rows / (pool.getParallelism() * 4));
+			pool.invoke(new RowTask(0, rows, grain, out));
+		}
+		return out;
+	}
+
+	/**
+	 * Runs the program over rows [from, to), a block at a time.
+	 */
+	void run(int from, int to, float[] out) {
+		int[] ops = expr.ops, operands = expr.operands;
+		float[] constants = expr.constants;
+		float[][] stack = new float[Math.max(1, expr.maxStack)][BLOCK];
+		float[][] temps = new float[expr.temps][BLOCK];
+		for (int lo = from; lo < to; lo += BLOCK) {
+			int n = Math.min(BLOCK, to - lo);
+			int top = -1;
+			for (int pc = 0; pc < ops.length; pc++) {
+				int operand = operands[pc];
+				switch (ops[pc]) {
+				case CompiledExpression.CONST: {
+					float[] s = stack[++top];
+					float value = constants[operand];
+					for (int r = 0; r < n; r++) {
+						s[r] = value;
+					}
+					break;
+				}
+				case CompiledExpression.VAR: {
+					float[] s = stack[++top];
+					if (floatColumns[operand] != null) {
+						System.arraycopy(floatColumns[operand], lo, s, 0, n);
+					} else if (intColumns[operand] != null) {
+						int[] column = intColumns[operand];
+						for (int r = 0; r < n; r++) {
+							s[r] = column[lo + r];
+						}
+					} else {
+						for (int r = 0; r < n; r++) {
+							s[r] = 0;
+						}
+					}
+					break;
+				}
+				case CompiledExpression.ELEM: {
+					float[] s = stack[top];
+					if (sharedItems[operand] != null) {
+						int[] items = sharedItems[operand];
+						for (int r = 0; r < n; r++) {
+							s[r] = items[(int) s[r]];
+						}
+					} else {
+						int[][] items = rowItems[operand];
+						for (int r = 0; r < n; r++) {
+							s[r] = items[lo + r][(int) s[r]];
+						}
+					}
+					break;
+				}
+				case CompiledExpression.ADD: {
+					float[] a = stack[top - 1], b = stack[top--];
+					for (int r = 0; r < n; r++) {
+						a[r] = a[r] + b[r];
+					}
+					break;
+				}
+				case CompiledExpression.SUB: {
+					float[] a = stack[top - 1], b = stack[top--];
+					for (int r = 0; r < n; r++) {
+						a[r] = a[r] - b[r];
+					}
+					break;
+				}
+				case CompiledExpression.MUL: {
+					float[] a = stack[top - 1], b = stack[top--];
+					for (int r = 0; r < n; r++) {
+						a[r] = a[r] * b[r];
+					}
+					break;
+				}
+				case CompiledExpression.DIV: {
+					float[] a = stack[top - 1], b = stack[top--];
+					for (int r = 0; r < n; r++) {
+						a[r] = a[r] / b[r];
+					}
+					break;
+				}
+				case CompiledExpression.LOAD:
+					System.arraycopy(temps[operand], 0, stack[++top], 0, n);
+					break;
+				case CompiledExpression.STORE:
+					System.arraycopy(stack[top], 0, temps[operand], 0, n);
+					break;
+				}
+			}
+			System.arraycopy(stack[top], 0, out, lo, n);
+		}
+	}
+
+	/**
+	 * Evaluates a range of rows, halving it until it is no longer than the grain
+	 */
+	private class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int from, to, grain;
+		final float[] out;
+
+		RowTask(int from, int to, int grain, float[] out) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.out = out;
+		}
+
+		protected void compute() {
+			if (to - from > grain) {
+				// split on a block boundary, so no block straddles two tasks
+				int mid = from + ((to - from) / 2 / BLOCK) * BLOCK;
+				invokeAll(new RowTask(from, mid, grain, out), new RowTask(mid, to, grain, out));
+			} else {
+				run(from, to, out);
+			}
+		}
+	}
+}
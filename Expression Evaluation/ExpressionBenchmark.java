@@ -0,0 +1,215 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures the time and the heap allocated per evaluation, for
+ * <code>Expression.evaluate</code>, for the <code>CompiledExpression</code> interpreter
+ * before and after optimization, and for the method handle evaluator of
+ * <code>ExpressionCompiler</code>. Run with
+ * <pre>
+ *     java app.ExpressionBenchmark [evaluations]
+ * </pre>
+ * Allocation is read from the thread's allocated-bytes counter, which the HotSpot
+ * management bean provides; on other VMs it is reported as unavailable. Once warmed
+ * up, no path may allocate: <code>Expression.evaluate</code> reuses the slots it
+ * resolved for the expression text and its per-thread stacks, and the compiled paths
+ * read values already resolved to slots. The benchmark fails with an
+ * <code>IllegalStateException</code> after printing its table if any path allocates a
+ * byte or more per evaluation. Last, a long expression is checked to give the same
+ * value on every path.
+ *
+ */
+public class ExpressionBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Terms in the long expression that every path must handle
+	 */
+	private static final int LONG_TERMS = 100000;
+
+	private static final String[] EXPRESSIONS = {
+		"a+b*c-d/e",
+		"(a+b)*(c-d)/(e+1)-varx*2",
+		"A[b+c*2]-B[A[d]]*(e/3+A[B[1]+c])",
+		"a-(b+A[B[2]])*d+A[c+B[a+b*2]]/(e+1)",
+		"(a+b)*(a+b)-A[c+1]*A[c+1]+3*4/(A[c+1]-b)",
+		// shared subexpressions, computed once per evaluation on the optimized paths
+		"(A[a+1]*b+c)*(A[a+1]*b+c)-(A[a+1]*b+c)/(d+A[a+1])+(A[a+1]*b+c)*e",
+	};
+
+	/**
+	 * Keeps results alive, so the JIT cannot drop the work being timed
+	 */
+	static float sink;
+
+	/**
+	 * Something to time: runs one evaluation n times
+	 */
+	interface Run {
+		void run(int n);
+	}
+
+	public static void main(String[] args) {
+		int evaluations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		Random random = new Random(112);
+		ArrayList<String> allocating = new ArrayList<String>();
+		System.out.printf("%-64s %-10s %12s %14s%n", "expression", "path", "ns/eval", "bytes/eval");
+		for (String expr : EXPRESSIONS) {
+			ArrayList<Variable> vars = new ArrayList<Variable>();
+			ArrayList<Array> arrays = new ArrayList<Array>();
+			Expression.makeVariableLists(expr, vars, arrays);
+			for (Variable var : vars) {
+				var.value = random.nextInt(4);
+			}
+			for (Array array : arrays) {
+				array.values = new int[16];
+				for (int i = 0; i < array.values.length; i++) {
+					array.values[i] = random.nextInt(4);
+				}
+			}
+			final CompiledExpression compiled = CompiledExpression.compile(expr);
+			final CompiledExpression optimized = compiled.optimize();
+			final ExpressionCompiler.Evaluator handles = ExpressionCompiler.compile(optimized);
+			final float[] values = compiled.symbols().values(vars);
+			final int[][] items = compiled.symbols().items(arrays);
+
+			long evaluateBytes = report(expr, "evaluate", evaluations, n -> {
+				float sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += Expression.evaluate(expr, vars, arrays);
+				}
+				sink += sum;
+			});
+			requireNoAllocation(expr, "evaluate", evaluateBytes, evaluations, allocating);
+			long compiledBytes = report(expr, "compiled", evaluations, n -> {
+				float sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += compiled.evaluate(values, items);
+				}
+				sink += sum;
+			});
+			requireNoAllocation(expr, "compiled", compiledBytes, evaluations, allocating);
+			long optimizedBytes = report(expr, "optimized", evaluations, n -> {
+				float sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += optimized.evaluate(values, items);
+				}
+				sink += sum;
+			});
+			requireNoAllocation(expr, "optimized", optimizedBytes, evaluations, allocating);
+			long handlesBytes = report(expr, "handles", evaluations, n -> {
+				float sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += handles.evaluate(values, items);
+				}
+				sink += sum;
+			});
+			requireNoAllocation(expr, "handles", handlesBytes, evaluations, allocating);
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+		checkLongExpression(LONG_TERMS);
+		if (!allocating.isEmpty()) {
+			throw new IllegalStateException("Allocation after warm-up on " + allocating);
+		}
+	}
+
+	/**
+	 * Records a path that allocated a byte or more per evaluation, on average. Reading
+	 * the counter itself allocates a few bytes, so less than one byte per evaluation is
+	 * taken as none. Nothing is recorded if the VM does not count allocation.
+	 *
+	 * @param bytes Bytes allocated by the measured run, or -1 if unavailable
+	 * @param allocating List of paths found allocating, to which this one is added
+	 */
+	static void requireNoAllocation(String expr, String path, long bytes, int evaluations,
+			ArrayList<String> allocating) {
+		if (bytes >= evaluations) {
+			allocating.add(path + " (" + bytes / evaluations + " bytes/eval) for " + expr);
+		}
+	}
+
+	/**
+	 * Checks that a long, machine-generated expression gives the same value on every
+	 * path, cached and optimized included. Each pass over a program of this length has
+	 * to run without recursion.
+	 *
+	 * @param terms Number of terms in the expression
+	 * @throws IllegalStateException If a path gives a different value
+	 */
+	static void checkLongExpression(int terms) {
+		StringBuilder sb = new StringBuilder("a");
+		for (int i = 1; i < terms; i++) {
+			sb.append(i % 2 == 0 ? "+a" : "-b");
+		}
+		String expr = sb.toString();
+		ArrayList<Variable> vars = new ArrayList<Variable>();
+		ArrayList<Array> arrays = new ArrayList<Array>();
+		Expression.makeVariableLists(expr, vars, arrays);
+		for (Variable var : vars) {
+			var.value = var.name.equals("a") ? 2 : 1;
+		}
+		float expected = Expression.evaluate(expr, vars, arrays);
+		CompiledExpression optimized = CompiledExpression.compile(expr).optimize();
+		float[] values = optimized.symbols().values(vars);
+		int[][] items = optimized.symbols().items(arrays);
+		check(expr, "compiled", expected, CompiledExpression.compile(expr).evaluate(vars, arrays));
+		check(expr, "optimized", expected, optimized.evaluate(values, items));
+		check(expr, "handles", expected, ExpressionCompiler.compile(optimized).evaluate(values, items));
+		check(expr, "cached", expected, new ExpressionCache(4).evaluate(expr, vars, arrays));
+		System.out.printf("%d-term expression: %s on every path%n", terms, expected);
+	}
+
+	private static void check(String expr, String path, float expected, float actual) {
+		if (Float.floatToIntBits(expected) != Float.floatToIntBits(actual)) {
+			throw new IllegalStateException(path + " gives " + actual + " instead of " + expected
+					+ " for a " + expr.length() + "-character expression");
+		}
+	}
+
+	/**
+	 * Warms up a run, then prints its best time and its allocation per evaluation.
+	 *
+	 * @return Bytes allocated by one more run of the given number of evaluations, or -1 if
+	 *         the VM does not say
+	 */
+	static long report(String expr, String path, int evaluations, Run run) {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			run.run(evaluations);
+		}
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			run.run(evaluations);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		long before = allocatedBytes();
+		run.run(evaluations);
+		long after = allocatedBytes();
+		String bytes = before < 0 ? "n/a"
+				: String.format("%.1f", (double) (after - before) / evaluations);
+		System.out.printf("%-64s %-10s %12.1f %14s%n", expr, path, (double) best / evaluations,
+				bytes);
+		return before < 0 ? -1 : after - before;
+	}
+
+	/**
+	 * @return Bytes allocated so far by the current thread, or -1 if the VM does not say
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,160 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe cache of compiled expressions, keyed by expression text, with
+ * least recently used eviction.
+ *
+ * A hit returns the parsed, optimized program together with its symbol table, so a
+ * repeated expression is neither tokenized nor scanned for its variables again. An
+ * expression is compiled outside the lock; if two threads miss on the same text at
+ * once, both compile it and one result is kept.
+ *
+ * Install a cache with <code>Expression.setCache</code> to route
+ * <code>Expression.makeVariableLists</code> and <code>Expression.evaluate</code>
+ * through it.
+ *
+ */
+public class ExpressionCache {
+
+	private final int capacity;
+	private final LinkedHashMap<String, CompiledExpression> entries;
+	private long hits, misses, evictions;
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param capacity Largest number of expressions kept
+	 */
+	public ExpressionCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		entries = new LinkedHashMap<String, CompiledExpression>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+				if (size() > ExpressionCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the compiled form of an expression, from the cache if present.
+	 *
+	 * @param expr The expression
+	 * @return The compiled, optimized expression
+	 */
+	public CompiledExpression get(String expr) {
+		CompiledExpression compiled = lookup(expr);
+		if (compiled == null) {
+			compiled = CompiledExpression.compile(expr).optimize();
+			store(expr, compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * Populates the vars list with simple variables, and arrays lists with arrays in the
+	 * expression, as <code>Expression.makeVariableLists</code> does.
+	 *
+	 * @param expr The expression
+	 * @param vars The variables array list - already created by the caller
+	 * @param arrays The arrays array list - already created by the caller
+	 */
+	public void makeVariableLists(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		CompiledExpression compiled = get(expr);
+		vars.addAll(compiled.variables());
+		arrays.addAll(compiled.arrays());
+	}
+
+	/**
+	 * Evaluates an expression.
+	 *
+	 * @param expr The expression
+	 * @param vars The variables array list, with values for all variables in the expression
+	 * @param arrays The arrays array list, with values for all array items
+	 * @return Result of evaluation
+	 * @throws IllegalArgumentException If an array in the expression is not in arrays
+	 */
+	public float evaluate(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		return get(expr).evaluate(vars, arrays);
+	}
+
+	private synchronized CompiledExpression lookup(String expr) {
+		CompiledExpression compiled = entries.get(expr);
+		if (compiled != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return compiled;
+	}
+
+	private synchronized void store(String expr, CompiledExpression compiled) {
+		entries.put(expr, compiled);
+	}
+
+	/**
+	 * Removes every entry. Counters are not reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return Number of entries currently held
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return Largest number of entries held
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return Number of lookups that found a compiled expression
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return Number of lookups that had to compile the expression
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return Number of entries dropped to make room
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @return Fraction of lookups that found a compiled expression, or 0 if there were none
+	 */
+	public synchronized double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public synchronized String toString() {
+		return "ExpressionCache[size=" + entries.size() + "/" + capacity + ", hits=" + hits
+				+ ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+}
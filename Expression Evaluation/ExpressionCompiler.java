@@ -0,0 +1,216 @@
+package app;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+/**
+ * This class compiles an expression into an evaluator for its hottest uses.
+ *
+ * Programs of up to <code>MAX_TREE_OPS</code> instructions become a tree of method
+ * handles of type (float[] values, int[][] items)float, with constants and slots bound
+ * in: a variable becomes a load from values[slot], an array item a load from
+ * items[slot][index]. Once an evaluator is hot, the JVM customizes the tree for that
+ * instance and the JIT inlines it into straight-line code, with no instruction
+ * dispatch left. Longer programs are run by the <code>CompiledExpression</code>
+ * interpreter instead, since a very deep handle tree would exceed the JIT's inlining
+ * limits.
+ *
+ * Operators are applied to the same operands as in the interpreter, so results are
+ * identical, and a subexpression the optimizer shares is computed once per evaluation,
+ * as there.
+ *
+ */
+public class ExpressionCompiler {
+
+	/**
+	 * Evaluates one compiled expression
+	 */
+	public interface Evaluator {
+		/**
+		 * Evaluates the expression with values given by slot.
+		 *
+		 * @param values Values of the simple variables, indexed by slot
+		 * @param items Items of the arrays, indexed by slot
+		 * @return Result of evaluation
+		 */
+		float evaluate(float[] values, int[][] items);
+	}
+
+	/**
+	 * Largest number of instructions compiled to a method handle tree
+	 */
+	public static final int MAX_TREE_OPS = 128;
+
+	private static final MethodType EVALUATE = MethodType.methodType(float.class,
+			float[].class, int[][].class);
+
+	private static final MethodHandle VALUE;
+	private static final MethodHandle ITEM;
+	private static final MethodHandle[] OPERATORS = new MethodHandle[CompiledExpression.DIV + 1];
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType binary = MethodType.methodType(float.class, float.class, float.class);
+		try {
+			VALUE = lookup.findStatic(ExpressionCompiler.class, "value",
+					MethodType.methodType(float.class, float[].class, int[][].class, int.class));
+			ITEM = lookup.findStatic(ExpressionCompiler.class, "item", MethodType.methodType(
+					float.class, float.class, float[].class, int[][].class, int.class));
+			OPERATORS[CompiledExpression.ADD] = lookup.findStatic(ExpressionCompiler.class, "add", binary);
+			OPERATORS[CompiledExpression.SUB] = lookup.findStatic(ExpressionCompiler.class, "subtract", binary);
+			OPERATORS[CompiledExpression.MUL] = lookup.findStatic(ExpressionCompiler.class, "multiply", binary);
+			OPERATORS[CompiledExpression.DIV] = lookup.findStatic(ExpressionCompiler.class, "divide", binary);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Parses, optimizes and compiles an expression.
+	 *
+	 * @param expr The expression
+	 * @return Evaluator for the expression
+	 */
+	public static Evaluator compile(String expr) {
+		return compile(CompiledExpression.compile(expr).optimize());
+	}
+
+	/**
+	 * Compiles a parsed expression. Its slots are those of <code>program.symbols()</code>.
+	 *
+	 * @param program The parsed expression
+	 * @return Evaluator for the expression
+	 */
+	public static Evaluator compile(CompiledExpression program) {
+		if (program.ops.length <= MAX_TREE_OPS) {
+			return new TreeEvaluator(tree(program));
+		}
+		return program::evaluate;
+	}
+
+	/**
+	 * Builds a (float[], int[][])float handle that computes a program.
+	 *
+	 * A program with temporaries computes each shared subexpression once: while the tree
+	 * is built, every handle takes the temporaries as extra float arguments after
+	 * (values, items), a LOAD reads its argument, and a STORE records the handle that
+	 * defines the temporary. The temporaries are then bound, last first, by folding each
+	 * definition into the handle as the argument it defines. Definitions only read
+	 * temporaries saved before them, so all are computed once, in order, before the
+	 * rest of the expression.
+	 */
+	static MethodHandle tree(CompiledExpression program) {
+		int temps = program.temps;
+		MethodType type = EVALUATE.appendParameterTypes(floats(temps));
+		MethodHandle[] stack = new MethodHandle[Math.max(1, program.maxStack)];
+		MethodHandle[] definitions = new MethodHandle[temps];
+		int top = -1;
+		for (int pc = 0; pc < program.ops.length; pc++) {
+			int operand = program.operands[pc];
+			switch (program.ops[pc]) {
+			case CompiledExpression.CONST:
+				stack[++top] = MethodHandles.dropArguments(
+						MethodHandles.constant(float.class, program.constants[operand]), 0,
+						type.parameterList());
+				break;
+			case CompiledExpression.VAR:
+				stack[++top] = MethodHandles.dropArguments(
+						MethodHandles.insertArguments(VALUE, 2, operand), 2, floats(temps));
+				break;
+			case CompiledExpression.ELEM:
+				// (values, items, temps) -> item(index(values, items, temps), values, items, slot)
+				stack[top] = MethodHandles.foldArguments(MethodHandles.dropArguments(
+						MethodHandles.insertArguments(ITEM, 3, operand), 3, floats(temps)), stack[top]);
+				break;
+			case CompiledExpression.LOAD:
+				stack[++top] = MethodHandles.permuteArguments(MethodHandles.identity(float.class),
+						type, 2 + operand);
+				break;
+			case CompiledExpression.STORE:
+				definitions[operand] = stack[top];
+				stack[top] = MethodHandles.permuteArguments(MethodHandles.identity(float.class),
+						type, 2 + operand);
+				break;
+			default:
+				// (values, items, temps) -> op(left(values, items, temps), right(values, items, temps))
+				MethodHandle op = MethodHandles.dropArguments(OPERATORS[program.ops[pc]], 2,
+						type.parameterList());
+				op = MethodHandles.foldArguments(op, 1, stack[top--]);
+				stack[top] = MethodHandles.foldArguments(op, 0, stack[top]);
+			}
+		}
+		MethodHandle handle = stack[top];
+		for (int k = temps - 1; k >= 0; k--) {
+			// move temporary k to the front, where folding its definition puts it
+			int[] reorder = new int[k + 3];
+			reorder[0] = 1;
+			reorder[1] = 2;
+			for (int j = 0; j < k; j++) {
+				reorder[2 + j] = 3 + j;
+			}
+			reorder[k + 2] = 0;
+			handle = MethodHandles.permuteArguments(handle, MethodType.methodType(float.class,
+					float.class).appendParameterTypes(EVALUATE.parameterArray())
+					.appendParameterTypes(floats(k)), reorder);
+			// the definition does not read temporary k or any after it
+			Object[] unused = new Object[temps - k];
+			Arrays.fill(unused, 0f);
+			MethodHandle definition = MethodHandles.insertArguments(definitions[k], 2 + k, unused);
+			handle = MethodHandles.foldArguments(handle, definition);
+		}
+		return handle;
+	}
+
+	private static Class<?>[] floats(int count) {
+		Class<?>[] types = new Class<?>[count];
+		Arrays.fill(types, float.class);
+		return types;
+	}
+
+	private static float value(float[] values, int[][] items, int slot) {
+		return values[slot];
+	}
+
+	private static float item(float index, float[] values, int[][] items, int slot) {
+		return items[slot][(int) index];
+	}
+
+	private static float add(float a, float b) {
+		return a + b;
+	}
+
+	private static float subtract(float a, float b) {
+		return a - b;
+	}
+
+	private static float multiply(float a, float b) {
+		return a * b;
+	}
+
+	private static float divide(float a, float b) {
+		return a / b;
+	}
+
+	/**
+	 * Evaluator backed by a method handle tree
+	 */
+	private static class TreeEvaluator implements Evaluator {
+		private final MethodHandle handle;
+
+		TreeEvaluator(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		public float evaluate(float[] values, int[][] items) {
+			try {
+				return (float) handle.invokeExact(values, items);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Rewrites a compiled program: operators whose operands are both constants are
+ * computed once, at optimization time, and identical subexpressions are computed
+ * once per evaluation and saved in temporaries for their later uses.
+ *
+ * Nothing is reordered or regrouped - a+3+4 stays (a+3)+4 - so every value comes from
+ * the same float operation on the same operands as before, and the result is
+ * unchanged bit for bit.
+ *
+ */
+class ExpressionOptimizer {
+
+	/**
+	 * A node of the expression DAG. Nodes are hash-consed as they are built, so equal
+	 * subexpressions are the same node and children can be compared by identity.
+	 */
+	private static class Node {
+		final int op;
+		final int operand;
+		final Node left, right;
+		int uses;
+		int temp = -1;
+
+		Node(int op, int operand, Node left, Node right) {
+			this.op = op;
+			this.operand = operand;
+			this.left = left;
+			this.right = right;
+		}
+
+		boolean isLeaf() {
+			return left == null;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Node)) {
+				return false;
+			}
+			Node node = (Node) other;
+			return op == node.op && operand == node.operand && left == node.left
+					&& right == node.right;
+		}
+
+		public int hashCode() {
+			int h = 31 * op + operand;
+			h = 31 * h + System.identityHashCode(left);
+			return 31 * h + System.identityHashCode(right);
+		}
+	}
+
+	private final HashMap<Node, Node> nodes = new HashMap<Node, Node>();
+	private final CompiledExpression.Builder builder;
+	private int temps;
+
+	private ExpressionOptimizer(SymbolTable symbols) {
+		builder = new CompiledExpression.Builder(symbols);
+	}
+
+	/**
+	 * Folds constants and shares repeated subexpressions.
+	 *
+	 * @param program The program to optimize
+	 * @return The optimized program, or the same one if it would not be shorter
+	 */
+	static CompiledExpression optimize(CompiledExpression program) {
+		ExpressionOptimizer optimizer = new ExpressionOptimizer(program.symbols);
+		Node root = optimizer.tree(program);
+		if (root == null) {
+			return program;
+		}
+		root.uses = 1;
+		count(root);
+		optimizer.emit(root);
+		CompiledExpression optimized = optimizer.builder.build(program.expr);
+		return optimized.ops.length < program.ops.length ? optimized : program;
+	}
+
+	/**
+	 * Rebuilds the DAG of a program from its postfix code, folding constants on the way.
+	 */
+	private Node tree(CompiledExpression program) {
+		ArrayList<Node> stack = new ArrayList<Node>();
+		for (int pc = 0; pc < program.ops.length; pc++) {
+			int op = program.ops[pc], operand = program.operands[pc];
+			switch (op) {
+			case CompiledExpression.CONST:
+				stack.add(constant(program.constants[operand]));
+				break;
+			case CompiledExpression.VAR:
+				stack.add(node(op, operand, null, null));
+				break;
+			case CompiledExpression.ELEM:
+				stack.add(node(op, operand, stack.remove(stack.size() - 1), null));
+				break;
+			case CompiledExpression.ADD:
+			case CompiledExpression.SUB:
+			case CompiledExpression.MUL:
+			case CompiledExpression.DIV:
+				Node right = stack.remove(stack.size() - 1);
+				Node left = stack.remove(stack.size() - 1);
+				if (left.op == CompiledExpression.CONST && right.op == CompiledExpression.CONST) {
+					stack.add(constant(fold(op, Float.intBitsToFloat(left.operand),
+							Float.intBitsToFloat(right.operand))));
+				} else {
+					stack.add(node(op, 0, left, right));
+				}
+				break;
+			default:
+				// already optimized
+				return null;
+			}
+		}
+		return stack.size() == 1 ? stack.get(0) : null;
+	}
+
+	private Node constant(float value) {
+		return node(CompiledExpression.CONST, Float.floatToIntBits(value), null, null);
+	}
+
+	private Node node(int op, int operand, Node left, Node right) {
+		Node node = new Node(op, operand, left, right);
+		Node existing = nodes.get(node);
+		if (existing != null) {
+			return existing;
+		}
+		nodes.put(node, node);
+		return node;
+	}
+
+	/**
+	 * Applies an operator to two constants, in the order they appear in the expression
+	 */
+	static float fold(int op, float left, float right) {
+		switch (op) {
+		case CompiledExpression.ADD:
+			return left + right;
+		case CompiledExpression.SUB:
+			return left - right;
+		case CompiledExpression.MUL:
+			return left * right;
+		default:
+			return left / right;
+		}
+	}
+
+	/**
+	 * Counts the references to every node reachable from this one, visiting each
+	 * node's children only the first time it is reached. The nodes still to visit are
+	 * kept on an explicit stack, so a deep expression cannot overflow the thread stack.
+	 */
+	private static void count(Node root) {
+		Node[] stack = new Node[16];
+		int top = 0;
+		stack[top++] = root;
+		while (top > 0) {
+			Node node = stack[--top];
+			if (top + 2 > stack.length) {
+				stack = Arrays.copyOf(stack, 2 * stack.length);
+			}
+			if (node.left != null && node.left.uses++ == 0) {
+				stack[top++] = node.left;
+			}
+			if (node.right != null && node.right.uses++ == 0) {
+				stack[top++] = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Emits code for a node, in postfix order. Shared nodes are computed and saved the
+	 * first time, and loaded after that. Each node on the explicit stack is paired with
+	 * the number of its operands emitted so far.
+	 */
+	private void emit(Node root) {
+		Node[] stack = new Node[16];
+		int[] done = new int[16];
+		int top = 0;
+		stack[top] = root;
+		done[top++] = 0;
+		while (top > 0) {
+			Node node = stack[top - 1];
+			if (done[top - 1] == 0) {
+				if (node.temp >= 0) {
+					builder.emit(CompiledExpression.LOAD, node.temp);
+					top--;
+					continue;
+				}
+				if (node.op == CompiledExpression.CONST) {
+					builder.constant(Float.intBitsToFloat(node.operand));
+					top--;
+					continue;
+				}
+				if (node.op == CompiledExpression.VAR) {
+					builder.emit(CompiledExpression.VAR, node.operand);
+					top--;
+					continue;
+				}
+			}
+			Node next = done[top - 1] == 0 ? node.left
+					: done[top - 1] == 1 && node.op != CompiledExpression.ELEM ? node.right : null;
+			if (next != null) {
+				done[top - 1]++;
+				if (top == stack.length) {
+					stack = Arrays.copyOf(stack, 2 * top);
+					done = Arrays.copyOf(done, 2 * top);
+				}
+				stack[top] = next;
+				done[top++] = 0;
+				continue;
+			}
+			top--;
+			builder.emit(node.op, node.op == CompiledExpression.ELEM ? node.operand : 0);
+			if (node.uses > 1 && !node.isLeaf()) {
+				node.temp = temps++;
+				builder.emit(CompiledExpression.STORE, node.temp);
+			}
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An expression that keeps the value of every subexpression, and brings its result up
+ * to date after a change to one variable or one array item by recomputing only the
+ * subexpressions that depend on it.
+ *
+ * The subexpressions form a DAG, with repeated subexpressions shared. A change marks
+ * the nodes that read the changed value, and dirty nodes are recomputed lowest first,
+ * so each is recomputed at most once, after all of its operands. A node whose new value
+ * is the same as its old one does not pass the change on to its parents. An update
+ * therefore costs time in proportion to the nodes on the paths from the change to the
+ * root, not to the size of the expression.
+ *
+ * Every node applies the same float operation to the same operands as
+ * <code>CompiledExpression.evaluate</code>, so results are identical.
+ *
+ */
+public class LiveExpression {
+
+	/**
+	 * A subexpression and its current value
+	 */
+	private static class Node {
+		final int op;
+		final int operand;
+		final Node left, right;
+		final int height;
+		final ArrayList<Node> parents = new ArrayList<Node>(2);
+		float value;
+
+		/**
+		 * For an array item, the index last read
+		 */
+		int index = -1;
+
+		/**
+		 * Whether the node is waiting in the heap
+		 */
+		boolean queued;
+
+		Node(int op, int operand, Node left, Node right) {
+			this.op = op;
+			this.operand = operand;
+			this.left = left;
+			this.right = right;
+			int height = 0;
+			if (left != null) {
+				height = left.height + 1;
+				left.parents.add(this);
+			}
+			if (right != null) {
+				height = Math.max(height, right.height + 1);
+				right.parents.add(this);
+			}
+			this.height = height;
+		}
+	}
+
+	private final CompiledExpression program;
+	private final float[] values;
+	private final int[][] items;
+	private final Node root;
+
+	/**
+	 * Nodes that read each simple variable, by slot
+	 */
+	private final Node[][] readers;
+
+	/**
+	 * Nodes that read an array item, keyed by array slot and index
+	 */
+	private final HashMap<Long, ArrayList<Node>> itemReaders = new HashMap<Long, ArrayList<Node>>();
+
+	/**
+	 * Dirty nodes, a binary min-heap on height
+	 */
+	private Node[] heap = new Node[16];
+	private int heapSize;
+
+	/**
+	 * Evaluates an expression and keeps it live. The values and items are copied, so
+	 * <code>setItem</code> does not change the arrays in the list, and changes to the
+	 * lists do not reach this live expression.
+	 *
+	 * @param expr The expression
+	 * @param vars The variables array list, with values for all variables in the expression
+	 * @param arrays The arrays array list, with values for all array items
+	 * @throws IllegalArgumentException If an array in the expression is not in arrays
+	 */
+	public LiveExpression(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		this(CompiledExpression.compile(expr).optimize(), vars, arrays);
+	}
+
+	private LiveExpression(CompiledExpression program, ArrayList<Variable> vars,
+			ArrayList<Array> arrays) {
+		this(program, program.symbols.values(vars), copy(program.symbols.items(arrays)));
+	}
+
+	/**
+	 * Copies item arrays, keeping one copy of an array that two slots share, so writes
+	 * through either slot are still seen by both.
+	 */
+	private static int[][] copy(int[][] items) {
+		int[][] copies = new int[items.length][];
+		for (int slot = 0; slot < items.length; slot++) {
+			for (int earlier = 0; earlier < slot && copies[slot] == null; earlier++) {
+				if (items[earlier] == items[slot]) {
+					copies[slot] = copies[earlier];
+				}
+			}
+			if (copies[slot] == null) {
+				copies[slot] = items[slot].clone();
+			}
+		}
+		return copies;
+	}
+
+	/**
+	 * Evaluates a compiled expression and keeps it live. The item arrays are not
+	 * copied: <code>setItem</code> writes to them, and they must not be changed in
+	 * any other way while this live expression is in use.
+	 *
+	 * @param program The compiled expression
+	 * @param values Values of the simple variables, indexed by slot; copied
+	 * @param items Items of the arrays, indexed by slot
+	 */
+	public LiveExpression(CompiledExpression program, float[] values, int[][] items) {
+		this.program = program;
+		this.values = values.clone();
+		this.items = items.clone();
+		ArrayList<ArrayList<Node>> variableReaders = new ArrayList<ArrayList<Node>>();
+		for (int slot = 0; slot < program.symbols.variableCount(); slot++) {
+			variableReaders.add(new ArrayList<Node>(1));
+		}
+
+		// postfix order is a topological order, so each node can be computed as it is made
+		Node[] stack = new Node[Math.max(1, program.maxStack)];
+		Node[] temps = new Node[program.temps];
+		int top = -1;
+		for (int pc = 0; pc < program.ops.length; pc++) {
+			int op = program.ops[pc], operand = program.operands[pc];
+			Node node;
+			switch (op) {
+			case CompiledExpression.CONST:
+				node = new Node(op, operand, null, null);
+				break;
+			case CompiledExpression.VAR:
+				node = new Node(op, operand, null, null);
+				variableReaders.get(operand).add(node);
+				break;
+			case CompiledExpression.ELEM:
+				node = new Node(op, operand, stack[top--], null);
+				break;
+			case CompiledExpression.LOAD:
+				stack[++top] = temps[operand];
+				continue;
+			case CompiledExpression.STORE:
+				temps[operand] = stack[top];
+				continue;
+			default:
+				Node right = stack[top--];
+				node = new Node(op, 0, stack[top--], right);
+			}
+			compute(node);
+			stack[++top] = node;
+		}
+		root = stack[top];
+		readers = new Node[variableReaders.size()][];
+		for (int slot = 0; slot < readers.length; slot++) {
+			readers[slot] = variableReaders.get(slot).toArray(new Node[0]);
+		}
+	}
+
+	/**
+	 * @return Current result of the expression
+	 */
+	public float value() {
+		return root.value;
+	}
+
+	/**
+	 * @return The compiled expression
+	 */
+	public CompiledExpression program() {
+		return program;
+	}
+
+	/**
+	 * Changes the value of a simple variable and brings the result up to date. Names
+	 * that are not in the expression are ignored.
+	 *
+	 * @param name Variable name
+	 * @param value New value
+	 * @return New result of the expression
+	 */
+	public float setVariable(String name, float value) {
+		int slot = program.symbols.variableSlot(name);
+		return slot < 0 ? root.value : setVariable(slot, value);
+	}
+
+	/**
+	 * Changes the value of a simple variable and brings the result up to date.
+	 *
+	 * @param slot Slot of the variable
+	 * @param value New value
+	 * @return New result of the expression
+	 */
+	public float setVariable(int slot, float value) {
+		if (Float.floatToIntBits(values[slot]) != Float.floatToIntBits(value)) {
+			values[slot] = value;
+			for (Node node : readers[slot]) {
+				enqueue(node);
+			}
+			update();
+		}
+		return root.value;
+	}
+
+	/**
+	 * Changes an item of an array and brings the result up to date. Names that are not
+	 * in the expression are ignored.
+	 *
+	 * @param name Array name
+	 * @param index Index of the item
+	 * @param value New value of the item
+	 * @return New result of the expression
+	 */
+	public float setItem(String name, int index, int value) {
+		int slot = program.symbols.arraySlot(name);
+		return slot < 0 ? root.value : setItem(slot, index, value);
+	}
+
+	/**
+	 * Changes an item of an array and brings the result up to date. Only the
+	 * subexpressions that currently read that item are recomputed.
+	 *
+	 * @param slot Slot of the array
+	 * @param index Index of the item
+	 * @param value New value of the item
+	 * @return New result of the expression
+	 */
+	public float setItem(int slot, int index, int value) {
+		if (items[slot][index] != value) {
+			items[slot][index] = value;
+			ArrayList<Node> nodes = itemReaders.get(key(slot, index));
+			if (nodes != null) {
+				for (Node node : nodes) {
+					enqueue(node);
+				}
+				update();
+			}
+		}
+		return root.value;
+	}
+
+	/**
+	 * Recomputes dirty nodes, lowest first, passing on only actual changes.
+	 */
+	private void update() {
+		try {
+			while (heapSize > 0) {
+				Node node = poll();
+				if (compute(node)) {
+					for (Node parent : node.parents) {
+						enqueue(parent);
+					}
+				}
+			}
+		} finally {
+			// if an item index was out of bounds, drop the rest of the update
+			while (heapSize > 0) {
+				poll();
+			}
+		}
+	}
+
+	/**
+	 * Computes the value of a node from its operands.
+	 *
+	 * @return Whether the value changed
+	 */
+	private boolean compute(Node node) {
+		float value;
+		switch (node.op) {
+		case CompiledExpression.CONST:
+			value = program.constants[node.operand];
+			break;
+		case CompiledExpression.VAR:
+			value = values[node.operand];
+			break;
+		case CompiledExpression.ELEM:
+			int index = (int) node.left.value;
+			value = items[node.operand][index];
+			if (index != node.index) {
+				moveReader(node, index);
+			}
+			break;
+		default:
+			value = ExpressionOptimizer.fold(node.op, node.left.value, node.right.value);
+		}
+		boolean changed = Float.floatToIntBits(value) != Float.floatToIntBits(node.value);
+		node.value = value;
+		return changed;
+	}
+
+	/**
+	 * Files an array item node under the index it now reads.
+	 */
+	private void moveReader(Node node, int index) {
+		if (node.index >= 0) {
+			ArrayList<Node> nodes = itemReaders.get(key(node.operand, node.index));
+			nodes.remove(node);
+			if (nodes.isEmpty()) {
+				itemReaders.remove(key(node.operand, node.index));
+			}
+		}
+		node.index = index;
+		ArrayList<Node> nodes = itemReaders.get(key(node.operand, index));
+		if (nodes == null) {
+			nodes = new ArrayList<Node>(1);
+			itemReaders.put(key(node.operand, index), nodes);
+		}
+		nodes.add(node);
+	}
+
+	private static Long key(int slot, int index) {
+		return ((long) slot << 32) | (index & 0xffffffffL);
+	}
+
+	private void enqueue(Node node) {
+		if (node.queued) {
+			return;
+		}
+		node.queued = true;
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, 2 * heapSize);
+		}
+		int k = heapSize++;
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			if (heap[parent].height <= node.height) {
+				break;
+			}
+			heap[k] = heap[parent];
+			k = parent;
+		}
+		heap[k] = node;
+	}
+
+	private Node poll() {
+		Node first = heap[0];
+		Node last = heap[--heapSize];
+		heap[heapSize] = null;
+		if (heapSize > 0) {
+			int k = 0;
+			while (true) {
+				int child = 2 * k + 1;
+				if (child >= heapSize) {
+					break;
+				}
+				if (child + 1 < heapSize && heap[child + 1].height < heap[child].height) {
+					child++;
+				}
+				if (heap[child].height >= last.height) {
+					break;
+				}
+				heap[k] = heap[child];
+				k = child;
+			}
+			heap[k] = last;
+		}
+		first.queued = false;
+		return first;
+	}
+
+	public String toString() {
+		return program + " = " + root.value;
+	}
+}
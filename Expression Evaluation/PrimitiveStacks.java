@@ -0,0 +1,154 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * Operand and operator stacks on primitive arrays, kept one set per thread and reused
+ * from one evaluation to the next, so that pushing a number or an operator allocates
+ * nothing once the arrays have grown to the depth an expression needs.
+ *
+ */
+class PrimitiveStacks {
+
+	private static final ThreadLocal<PrimitiveStacks> local = new ThreadLocal<PrimitiveStacks>() {
+		protected PrimitiveStacks initialValue() {
+			return new PrimitiveStacks();
+		}
+	};
+
+	float[] numbers = new float[32];
+	int numberTop = -1;
+
+	char[] operators = new char[32];
+	int operatorTop = -1;
+
+	Array[] arrays = new Array[8];
+	int arrayTop = -1;
+
+	/**
+	 * Values of the simple variables and the arrays of the expression being evaluated,
+	 * by slot
+	 */
+	float[] values = new float[16];
+	Array[] arraySlots = new Array[8];
+
+	/**
+	 * Returns this thread's stacks, emptied.
+	 *
+	 * @return Empty stacks
+	 */
+	static PrimitiveStacks get() {
+		PrimitiveStacks stacks = local.get();
+		stacks.numberTop = -1;
+		stacks.operatorTop = -1;
+		while (stacks.arrayTop >= 0) {
+			stacks.arrays[stacks.arrayTop--] = null;
+		}
+		return stacks;
+	}
+
+	/**
+	 * Returns this thread's number stack, at least the given size. Its contents are
+	 * left over from earlier use.
+	 *
+	 * @param size Number of entries needed
+	 * @return Number stack
+	 */
+	static float[] numbers(int size) {
+		PrimitiveStacks stacks = local.get();
+		if (stacks.numbers.length < size) {
+			stacks.numbers = new float[Math.max(size, 2 * stacks.numbers.length)];
+		}
+		return stacks.numbers;
+	}
+
+	/**
+	 * Returns the values by slot, at least the given size. Contents are left over.
+	 *
+	 * @param size Number of slots needed
+	 * @return Values by slot
+	 */
+	float[] values(int size) {
+		if (values.length < size) {
+			values = new float[Math.max(size, 2 * values.length)];
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the arrays by slot, at least the given size. Contents are left over.
+	 *
+	 * @param size Number of slots needed
+	 * @return Arrays by slot
+	 */
+	Array[] arraySlots(int size) {
+		if (arraySlots.length < size) {
+			arraySlots = new Array[Math.max(size, 2 * arraySlots.length)];
+		}
+		return arraySlots;
+	}
+
+	void pushNumber(float value) {
+		if (++numberTop == numbers.length) {
+			numbers = Arrays.copyOf(numbers, 2 * numbers.length);
+		}
+		numbers[numberTop] = value;
+	}
+
+	float popNumber() {
+		if (numberTop < 0) {
+			throw new IllegalArgumentException("Missing operand in expression");
+		}
+		return numbers[numberTop--];
+	}
+
+	void pushOperator(char op) {
+		if (++operatorTop == operators.length) {
+			operators = Arrays.copyOf(operators, 2 * operators.length);
+		}
+		operators[operatorTop] = op;
+	}
+
+	char popOperator() {
+		if (operatorTop < 0) {
+			throw new IllegalArgumentException("Unbalanced brackets in expression");
+		}
+		return operators[operatorTop--];
+	}
+
+	char peekOperator() {
+		if (operatorTop < 0) {
+			throw new IllegalArgumentException("Unbalanced brackets in expression");
+		}
+		return operators[operatorTop];
+	}
+
+	boolean hasOperators() {
+		return operatorTop >= 0;
+	}
+
+	void pushArray(Array array) {
+		if (++arrayTop == arrays.length) {
+			arrays = Arrays.copyOf(arrays, 2 * arrays.length);
+		}
+		arrays[arrayTop] = array;
+	}
+
+	Array popArray() {
+		Array array = arrays[arrayTop];
+		arrays[arrayTop--] = null;
+		return array;
+	}
+
+	/**
+	 * Pops two numbers, applies the operator and pushes the result - with the second
+	 * number popped on the left.
+	 *
+	 * @param op Operator
+	 */
+	void apply(char op) {
+		float a = popNumber();
+		float b = popNumber();
+		pushNumber(Expression.calculate(op, a, b));
+	}
+}
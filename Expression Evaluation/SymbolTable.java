@@ -0,0 +1,228 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Maps the names of the simple variables and arrays in an expression to integer slots,
+ * numbered from 0 in order of first appearance. Each name is resolved once, through a
+ * hash table; after that, values are read from primitive arrays by slot.
+ *
+ */
+public class SymbolTable {
+
+	private final HashMap<String, Integer> variableSlots = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> arraySlots = new HashMap<String, Integer>();
+	private final ArrayList<String> variableNames = new ArrayList<String>();
+	private final ArrayList<String> arrayNames = new ArrayList<String>();
+
+	/**
+	 * Returns the slot of a simple variable, adding it if it is new.
+	 *
+	 * @param name Variable name
+	 * @return Slot of the variable
+	 */
+	public int addVariable(String name) {
+		return add(variableSlots, variableNames, name);
+	}
+
+	/**
+	 * Returns the slot of an array, adding it if it is new.
+	 *
+	 * @param name Array name
+	 * @return Slot of the array
+	 */
+	public int addArray(String name) {
+		return add(arraySlots, arrayNames, name);
+	}
+
+	private static int add(HashMap<String, Integer> slots, ArrayList<String> names, String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			slot = names.size();
+			slots.put(name, slot);
+			names.add(name);
+		}
+		return slot;
+	}
+
+	/**
+	 * @param name Variable name
+	 * @return Slot of the simple variable, or -1 if it is not in the table
+	 */
+	public int variableSlot(String name) {
+		Integer slot = variableSlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * @param name Array name
+	 * @return Slot of the array, or -1 if it is not in the table
+	 */
+	public int arraySlot(String name) {
+		Integer slot = arraySlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * @return Number of simple variables
+	 */
+	public int variableCount() {
+		return variableNames.size();
+	}
+
+	/**
+	 * @return Number of arrays
+	 */
+	public int arrayCount() {
+		return arrayNames.size();
+	}
+
+	/**
+	 * @param slot Slot of a simple variable
+	 * @return Name of the variable
+	 */
+	public String variableName(int slot) {
+		return variableNames.get(slot);
+	}
+
+	/**
+	 * @param slot Slot of an array
+	 * @return Name of the array
+	 */
+	public String arrayName(int slot) {
+		return arrayNames.get(slot);
+	}
+
+	/**
+	 * Collects the values of the simple variables by slot. Variables in the list that
+	 * are not in the table are ignored, and slots with no variable in the list get 0.
+	 * If a name appears more than once, the last one wins, as in
+	 * <code>Expression.evaluate</code>.
+	 *
+	 * @param vars The variables array list
+	 * @return New array of values, indexed by slot
+	 */
+	public float[] values(ArrayList<Variable> vars) {
+		float[] values = new float[variableNames.size()];
+		values(vars, values);
+		return values;
+	}
+
+	/**
+	 * Collects the values of the simple variables by slot into an array, as
+	 * <code>values(vars)</code> does, without allocating.
+	 *
+	 * @param vars The variables array list
+	 * @param values Array of at least <code>variableCount()</code> entries, whose first
+	 *        <code>variableCount()</code> are overwritten
+	 */
+	public void values(ArrayList<Variable> vars, float[] values) {
+		Arrays.fill(values, 0, variableNames.size(), 0);
+		for (int k = 0; k < vars.size(); k++) {
+			Variable var = vars.get(k);
+			Integer slot = variableSlots.get(var.name);
+			if (slot != null) {
+				values[slot] = var.value;
+			}
+		}
+	}
+
+	/**
+	 * Collects the arrays by slot into an array, without allocating. If a name appears
+	 * more than once, the first one wins, as in <code>Expression.evaluate</code>; slots
+	 * with no array in the list get null.
+	 *
+	 * @param arrays The arrays array list
+	 * @param bySlot Array of at least <code>arrayCount()</code> entries, whose first
+	 *        <code>arrayCount()</code> are overwritten
+	 */
+	public void arrays(ArrayList<Array> arrays, Array[] bySlot) {
+		Arrays.fill(bySlot, 0, arrayNames.size(), null);
+		for (int k = 0; k < arrays.size(); k++) {
+			Array arr = arrays.get(k);
+			Integer slot = arraySlots.get(arr.name);
+			if (slot != null && bySlot[slot] == null) {
+				bySlot[slot] = arr;
+			}
+		}
+	}
+
+	/**
+	 * Collects the items of the arrays by slot. If a name appears more than once, the
+	 * first one wins, as in <code>Expression.evaluate</code>.
+	 *
+	 * @param arrays The arrays array list
+	 * @return New array of item arrays, indexed by slot
+	 * @throws IllegalArgumentException If an array in the table is not in the list
+	 */
+	public int[][] items(ArrayList<Array> arrays) {
+		int[][] items = new int[arrayNames.size()][];
+		for (int k = 0; k < arrays.size(); k++) {
+			Array arr = arrays.get(k);
+			Integer slot = arraySlots.get(arr.name);
+			if (slot != null && items[slot] == null) {
+				items[slot] = arr.values;
+			}
+		}
+		for (int slot = 0; slot < items.length; slot++) {
+			if (items[slot] == null) {
+				throw new IllegalArgumentException("No values for array " + arrayNames.get(slot));
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Collects the storage of the arrays by slot, from storage given in the order of
+	 * the arrays list, as <code>ValueLoader.load</code> returns it. If a name appears
+	 * more than once, the first one wins.
+	 *
+	 * @param arrays The arrays array list
+	 * @param storages Storage of each array in the list
+	 * @return New array of storage, indexed by slot
+	 * @throws IllegalArgumentException If an array in the table has no storage
+	 */
+	public ArrayStorage[] storages(ArrayList<Array> arrays, ArrayStorage[] storages) {
+		ArrayStorage[] bySlot = new ArrayStorage[arrayNames.size()];
+		for (int k = 0; k < arrays.size(); k++) {
+			Integer slot = arraySlots.get(arrays.get(k).name);
+			if (slot != null && bySlot[slot] == null) {
+				bySlot[slot] = storages[k];
+			}
+		}
+		for (int slot = 0; slot < bySlot.length; slot++) {
+			if (bySlot[slot] == null) {
+				throw new IllegalArgumentException("No values for array " + arrayNames.get(slot));
+			}
+		}
+		return bySlot;
+	}
+
+	/**
+	 * Returns new variables, one per simple variable, in slot order.
+	 *
+	 * @return New list of variables, all with value 0
+	 */
+	public ArrayList<Variable> variables() {
+		ArrayList<Variable> vars = new ArrayList<Variable>(variableNames.size());
+		for (String name : variableNames) {
+			vars.add(new Variable(name));
+		}
+		return vars;
+	}
+
+	/**
+	 * Returns new arrays, one per array, in slot order.
+	 *
+	 * @return New list of arrays, with no values
+	 */
+	public ArrayList<Array> arrays() {
+		ArrayList<Array> arrays = new ArrayList<Array>(arrayNames.size());
+		for (String name : arrayNames) {
+			arrays.add(new Array(name));
+		}
+		return arrays;
+	}
+}
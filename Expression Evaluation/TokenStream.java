@@ -0,0 +1,281 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * The tokens of an expression, found in a single pass over its characters.
+ *
+ * A token is a number (a run of digits, already parsed), a name (a run of letters), an
+ * array name (a run of letters followed directly by [, which belongs to the token) or
+ * one of the characters ( ) ] + - * /. Anything else is skipped, as
+ * <code>Expression.makeVariableLists</code> and <code>Expression.evaluate</code> always
+ * have. Each token is a span into the characters of the expression; each distinct name
+ * is made into a String once and shared by all its occurrences, and resolved once to
+ * the slot it has in the stream's {@link SymbolTable}.
+ *
+ * Token streams never change once made. The last one made on each thread is kept, so
+ * that listing the variables of an expression and then evaluating it lexes it once.
+ *
+ */
+final class TokenStream {
+
+	/**
+	 * Kinds of token
+	 */
+	static final byte NUMBER = 0, NAME = 1, ARRAY = 2, OPERATOR = 3;
+
+	private static final ThreadLocal<TokenStream> last = new ThreadLocal<TokenStream>();
+
+	/**
+	 * The expression text
+	 */
+	final String expr;
+
+	/**
+	 * Characters of the expression
+	 */
+	final char[] text;
+
+	/**
+	 * Number of tokens
+	 */
+	final int count;
+
+	private final byte[] kinds;
+	private final int[] starts, ends;
+	private final float[] numbers;
+	private final String[] names;
+
+	/**
+	 * Slots of the simple variables and arrays named in the expression
+	 */
+	final SymbolTable symbols = new SymbolTable();
+
+	/**
+	 * Slot of each NAME or ARRAY token in symbols
+	 */
+	private final int[] slots;
+
+	private TokenStream(String expr) {
+		this.expr = expr;
+		text = expr.toCharArray();
+		int capacity = Math.max(4, text.length / 2);
+		byte[] kinds = new byte[capacity];
+		int[] starts = new int[capacity], ends = new int[capacity];
+		float[] numbers = null;
+		String[] names = null;
+		String[] table = new String[16];
+		int distinct = 0;
+		int count = 0;
+		for (int i = 0; i < text.length; i++) {
+			char c = text[i];
+			byte kind;
+			int start = i;
+			if (Character.isDigit(c)) {
+				while (i + 1 < text.length && Character.isDigit(text[i + 1])) {
+					i++;
+				}
+				kind = NUMBER;
+			} else if (Character.isLetter(c)) {
+				while (i + 1 < text.length && Character.isLetter(text[i + 1])) {
+					i++;
+				}
+				if (i + 1 < text.length && text[i + 1] == '[') {
+					i++;
+					kind = ARRAY;
+				} else {
+					kind = NAME;
+				}
+			} else if (c == '(' || c == ')' || c == ']' || c == '+' || c == '-' || c == '*'
+					|| c == '/') {
+				kind = OPERATOR;
+			} else {
+				continue;
+			}
+			if (count == kinds.length) {
+				kinds = Arrays.copyOf(kinds, 2 * count);
+				starts = Arrays.copyOf(starts, 2 * count);
+				ends = Arrays.copyOf(ends, 2 * count);
+				if (numbers != null) {
+					numbers = Arrays.copyOf(numbers, 2 * count);
+				}
+				if (names != null) {
+					names = Arrays.copyOf(names, 2 * count);
+				}
+			}
+			kinds[count] = kind;
+			starts[count] = start;
+			ends[count] = i + 1;
+			if (kind == NUMBER) {
+				if (numbers == null) {
+					numbers = new float[kinds.length];
+				}
+				numbers[count] = parseNumber(text, start, i + 1);
+			} else if (kind != OPERATOR) {
+				if (names == null) {
+					names = new String[kinds.length];
+				}
+				int end = kind == ARRAY ? i : i + 1;
+				if (2 * (distinct + 1) > table.length) {
+					table = rehash(table);
+				}
+				int slot = find(table, text, start, end);
+				if (table[slot] == null) {
+					table[slot] = new String(text, start, end - start);
+					distinct++;
+				}
+				names[count] = table[slot];
+			}
+			count++;
+		}
+		this.count = count;
+		this.kinds = kinds;
+		this.starts = starts;
+		this.ends = ends;
+		this.numbers = numbers;
+		this.names = names;
+		slots = new int[count];
+		for (int k = 0; k < count; k++) {
+			if (kinds[k] == NAME) {
+				slots[k] = symbols.addVariable(names[k]);
+			} else if (kinds[k] == ARRAY) {
+				slots[k] = symbols.addArray(names[k]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the tokens of an expression, reusing those of the last expression
+	 * tokenized on this thread if it is the same.
+	 *
+	 * @param expr The expression
+	 * @return Its tokens
+	 */
+	static TokenStream of(String expr) {
+		TokenStream tokens = last.get();
+		if (tokens == null || !tokens.expr.equals(expr)) {
+			tokens = new TokenStream(expr);
+			last.set(tokens);
+		}
+		return tokens;
+	}
+
+	/**
+	 * @param k Token number
+	 * @return Kind of the token
+	 */
+	byte kind(int k) {
+		return kinds[k];
+	}
+
+	/**
+	 * @param k Token number
+	 * @return Value of a NUMBER token
+	 */
+	float number(int k) {
+		return numbers[k];
+	}
+
+	/**
+	 * @param k Token number
+	 * @return Name of a NAME or ARRAY token, without the [
+	 */
+	String name(int k) {
+		return names[k];
+	}
+
+	/**
+	 * @param k Token number
+	 * @return Slot of a NAME or ARRAY token in symbols
+	 */
+	int slot(int k) {
+		return slots[k];
+	}
+
+	/**
+	 * @param k Token number
+	 * @return Character of an OPERATOR token
+	 */
+	char operator(int k) {
+		return text[starts[k]];
+	}
+
+	/**
+	 * @param k Token number
+	 * @return Offset of the first character of the token
+	 */
+	int start(int k) {
+		return starts[k];
+	}
+
+	/**
+	 * @param k Token number
+	 * @return Offset just past the last character of the token
+	 */
+	int end(int k) {
+		return ends[k];
+	}
+
+	/**
+	 * Returns the value of the digits text[start..end), as new Float(String) would.
+	 */
+	static float parseNumber(char[] text, int start, int end) {
+		if (end - start > 18) {
+			return Float.parseFloat(new String(text, start, end - start));
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			if (text[i] < '0' || text[i] > '9') {
+				// a digit from another script - leave it to parseFloat
+				return Float.parseFloat(new String(text, start, end - start));
+			}
+			value = value * 10 + (text[i] - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the slot of the name text[start..end) in an open-addressing table: the
+	 * slot that holds it, or the empty slot where it belongs.
+	 */
+	private static int find(String[] table, char[] text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + text[i];
+		}
+		int mask = table.length - 1;
+		for (int slot = (h ^ (h >>> 16)) & mask;; slot = (slot + 1) & mask) {
+			String name = table[slot];
+			if (name == null || (name.hashCode() == h && matches(name, text, start, end))) {
+				return slot;
+			}
+		}
+	}
+
+	private static boolean matches(String name, char[] text, int start, int end) {
+		if (name.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (name.charAt(i - start) != text[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String[] rehash(String[] table) {
+		String[] larger = new String[2 * table.length];
+		for (String name : table) {
+			if (name != null) {
+				char[] chars = name.toCharArray();
+				larger[find(larger, chars, 0, chars.length)] = name;
+			}
+		}
+		return larger;
+	}
+
+	public String toString() {
+		return expr;
+	}
+}
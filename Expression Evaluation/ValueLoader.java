@@ -0,0 +1,274 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class loads values for variables and arrays from input in the same format as
+ * <code>Expression.loadVariableValues</code>: a name and a value per line for a simple
+ * variable, or a name, a length and <code>(index,value)</code> pairs for an array.
+ *
+ * The input is parsed byte by byte from a buffer, with no Scanner or StringTokenizer,
+ * and only the name on each line is made into a String, so lines may be any length.
+ * Pairs go straight into the array's <code>ArrayStorage</code> as they are read, with
+ * nothing buffered: an array too long for the heap is mapped to a file, and a long array
+ * stays sparse until too many of its items are set, so a huge array does not take up
+ * its full length in heap.
+ *
+ */
+public class ValueLoader {
+
+	private static final int BUFFER = 1 << 16;
+
+	private final InputStream in;
+	private final byte[] buf = new byte[BUFFER];
+	private int pos;
+	private int limit;
+	private long line = 1;
+
+	private byte[] name = new byte[16];
+
+	/**
+	 * Storage for the array on the line being read
+	 */
+	private ArrayStorage storage;
+
+	private ValueLoader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Loads values from a file.
+	 *
+	 * @param file The file of values
+	 * @param vars The variables array list, previously populated by makeVariableLists
+	 * @param arrays The arrays array list, previously populated by makeVariableLists
+	 * @return Storage for each array, in the order of the arrays list; null for arrays
+	 *         the input does not mention
+	 * @throws IOException If the file cannot be read or is malformed
+	 * @see #load(InputStream, ArrayList, ArrayList)
+	 */
+	public static ArrayStorage[] load(Path file, ArrayList<Variable> vars, ArrayList<Array> arrays)
+			throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return load(in, vars, arrays);
+		}
+	}
+
+	/**
+	 * Loads values from a stream. Simple variables get their values in the vars list.
+	 * Arrays get their items in the returned storage; an array stored as a plain int
+	 * array also gets it as <code>values</code>, for use with
+	 * <code>Expression.evaluate</code>. A sparse or mapped array gets null
+	 * <code>values</code>, so <code>Expression.evaluate</code> rejects it, and must be
+	 * read through its storage with <code>CompiledExpression.evaluate</code>. Lines for names not in either list, and blank
+	 * lines, are skipped. If a name is both a variable and an array, a line with no
+	 * pairs sets the variable.
+	 *
+	 * @param in The stream of values - not closed
+	 * @param vars The variables array list, previously populated by makeVariableLists
+	 * @param arrays The arrays array list, previously populated by makeVariableLists
+	 * @return Storage for each array, in the order of the arrays list; null for arrays
+	 *         the input does not mention. The caller should close the storages when done.
+	 * @throws IOException If the stream cannot be read or is malformed - any storage
+	 *         made so far is closed
+	 */
+	public static ArrayStorage[] load(InputStream in, ArrayList<Variable> vars,
+			ArrayList<Array> arrays) throws IOException {
+		// index the lists by name once - if a name appears twice, the first one gets the value
+		HashMap<String, Integer> varIndex = new HashMap<String, Integer>();
+		for (int k = vars.size() - 1; k >= 0; k--) {
+			varIndex.put(vars.get(k).name, k);
+		}
+		HashMap<String, Integer> arrayIndex = new HashMap<String, Integer>();
+		for (int k = arrays.size() - 1; k >= 0; k--) {
+			arrayIndex.put(arrays.get(k).name, k);
+		}
+		ArrayStorage[] storages = new ArrayStorage[arrays.size()];
+		ValueLoader loader = new ValueLoader(in);
+		try {
+			loader.parse(varIndex, arrayIndex, vars, arrays, storages);
+		} catch (IOException | RuntimeException e) {
+			loader.close(loader.storage);
+			for (ArrayStorage storage : storages) {
+				loader.close(storage);
+			}
+			throw e;
+		}
+		return storages;
+	}
+
+	private void parse(HashMap<String, Integer> varIndex, HashMap<String, Integer> arrayIndex,
+			ArrayList<Variable> vars, ArrayList<Array> arrays, ArrayStorage[] storages)
+			throws IOException {
+		while (true) {
+			skipBlanks();
+			int b = peek();
+			if (b < 0) {
+				return;
+			}
+			if (b == '\n' || b == '\r') {
+				skipLineEnd();
+				continue;
+			}
+			String tok = readName();
+			Integer vari = varIndex.get(tok);
+			Integer arri = arrayIndex.get(tok);
+			if (vari == null && arri == null) {
+				skipLine();
+				continue;
+			}
+			skipBlanks();
+			int num = readInt("Expected value after " + tok);
+			// the storage is made at the first pair, as a name that is both a variable
+			// and an array is the variable on a line with no pairs
+			int pairs = 0;
+			while (true) {
+				skipSeparators();
+				if (atLineEnd()) {
+					break;
+				}
+				int index = readInt("Expected index");
+				skipSeparators();
+				int item = readInt("Expected item");
+				if (arri == null) {
+					continue;
+				}
+				if (pairs++ == 0) {
+					storage = ArrayStorage.create(num);
+				}
+				storage = ArrayStorage.put(storage, index, item);
+			}
+			skipLineEnd();
+			if (vari != null && (pairs == 0 || arri == null)) { // scalar symbol
+				vars.get(vari).value = num;
+			} else { // array symbol
+				if (pairs == 0) {
+					storage = ArrayStorage.create(num);
+				}
+				close(storages[arri]);
+				storages[arri] = storage;
+				storage = null;
+				// sparse and mapped items are only in the storage - clear values so an
+				// earlier line's items cannot be read in their place
+				arrays.get(arri).values = storages[arri] instanceof ArrayStorage.Dense
+						? ((ArrayStorage.Dense) storages[arri]).values : null;
+			}
+		}
+	}
+
+	/**
+	 * Closes storage that is being dropped. A file that cannot be deleted now is still
+	 * deleted when the VM exits.
+	 */
+	private void close(ArrayStorage storage) {
+		if (storage != null) {
+			try {
+				storage.close();
+			} catch (IOException e) {
+				// the file is still deleted on exit
+			}
+		}
+	}
+
+	private int peek() throws IOException {
+		if (pos == limit) {
+			limit = in.read(buf, 0, BUFFER);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buf[pos] & 0xff;
+	}
+
+	private String readName() throws IOException {
+		int n = 0;
+		for (int b = peek(); b >= 0 && !isBlank(b) && b != '\n' && b != '\r'; b = peek()) {
+			if (n == name.length) {
+				name = Arrays.copyOf(name, 2 * n);
+			}
+			name[n++] = (byte) b;
+			pos++;
+		}
+		return new String(name, 0, n, StandardCharsets.UTF_8);
+	}
+
+	private int readInt(String expected) throws IOException {
+		int b = peek();
+		boolean negative = b == '-';
+		if (b == '-' || b == '+') {
+			pos++;
+			b = peek();
+		}
+		if (b < '0' || b > '9') {
+			throw error(expected);
+		}
+		long value = 0;
+		while (b >= '0' && b <= '9') {
+			value = value * 10 + (b - '0');
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				throw error("Number out of range");
+			}
+			pos++;
+			b = peek();
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw error("Number out of range");
+		}
+		return (int) value;
+	}
+
+	private void skipBlanks() throws IOException {
+		for (int b = peek(); b >= 0 && isBlank(b); b = peek()) {
+			pos++;
+		}
+	}
+
+	/**
+	 * Skips blanks and the brackets and commas around pairs
+	 */
+	private void skipSeparators() throws IOException {
+		for (int b = peek(); b >= 0 && (isBlank(b) || b == '(' || b == ',' || b == ')'); b = peek()) {
+			pos++;
+		}
+	}
+
+	private boolean atLineEnd() throws IOException {
+		int b = peek();
+		return b < 0 || b == '\n' || b == '\r';
+	}
+
+	private void skipLine() throws IOException {
+		while (!atLineEnd()) {
+			pos++;
+		}
+		skipLineEnd();
+	}
+
+	private void skipLineEnd() throws IOException {
+		if (peek() == '\r') {
+			pos++;
+		}
+		if (peek() == '\n') {
+			pos++;
+		}
+		line++;
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " on line " + line);
+	}
+
+	private static boolean isBlank(int b) {
+		return b == ' ' || b == '\t' || b == '\f';
+	}
+}
@@ -0,0 +1,242 @@
+package poly;
+
+/**
+ * This class evaluates one polynomial at many values at once, using Horner's rule.
+ *
+ * The points are processed in blocks, and each Horner step runs over a whole block
+ * as a plain loop over primitive arrays with no dependence between points, which the
+ * JIT compiles to SIMD instructions. Gaps between degrees of sparse polynomials are
+ * bridged with powers computed by repeated squaring instead of <code>Math.pow</code>.
+ *
+ * @author runb-cs112
+ *
+ */
+public class BatchEvaluator {
+
+	/**
+	 * Number of points handled per block, small enough for the block to stay in cache
+	 */
+	static final int BLOCK = 1024;
+
+	/**
+	 * Evaluates a polynomial at every value in an array.
+	 *
+	 * @param poly Polynomial (front of linked list) to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @return New array with the value of the polynomial at each of xs
+	 */
+	public static float[] evaluate(Node poly, float[] xs) {
+		float[] results = new float[xs.length];
+		evaluate(poly, xs, results);
+		return results;
+	}
+
+	/**
+	 * Evaluates a polynomial at every value in an array, writing into a caller supplied
+	 * array.
+	 *
+	 * @param poly Polynomial (front of linked list) to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @param results Array that receives the value of the polynomial at each of xs - must
+	 *        be at least as long as xs, and may be xs itself
+	 */
+	public static void evaluate(Node poly, float[] xs, float[] results) {
+		checkLength(xs.length, results.length);
+		Terms terms = new Terms(poly);
+		int[] degrees = terms.degrees;
+		double[] coeffs = terms.coeffs;
+		if (degrees.length == 0) {
+			java.util.Arrays.fill(results, 0, xs.length, 0f);
+			return;
+		}
+		float[] powers = new float[BLOCK];
+		float[] squares = new float[BLOCK];
+		float[] acc = new float[BLOCK];
+		for (int base = 0; base < xs.length; base += BLOCK) {
+			int len = Math.min(BLOCK, xs.length - base);
+			float lead = (float) coeffs[0];
+			for (int p = 0; p < len; p++) {
+				acc[p] = lead;
+			}
+			for (int k = 1; k < degrees.length; k++) {
+				int gap = degrees[k - 1] - degrees[k];
+				float c = (float) coeffs[k];
+				if (gap == 1) {
+					for (int p = 0; p < len; p++) {
+						acc[p] = acc[p] * xs[base + p] + c;
+					}
+				} else {
+					power(xs, base, len, gap, powers, squares);
+					for (int p = 0; p < len; p++) {
+						acc[p] = acc[p] * powers[p] + c;
+					}
+				}
+			}
+			int last = degrees[degrees.length - 1];
+			if (last > 0) {
+				power(xs, base, len, last, powers, squares);
+				for (int p = 0; p < len; p++) {
+					acc[p] *= powers[p];
+				}
+			}
+			System.arraycopy(acc, 0, results, base, len);
+		}
+	}
+
+	/**
+	 * Evaluates a polynomial at every value in an array.
+	 *
+	 * @param poly Polynomial (front of linked list) to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @return New array with the value of the polynomial at each of xs
+	 */
+	public static double[] evaluate(Node poly, double[] xs) {
+		double[] results = new double[xs.length];
+		evaluate(poly, xs, results);
+		return results;
+	}
+
+	/**
+	 * Evaluates a polynomial at every value in an array, writing into a caller supplied
+	 * array.
+	 *
+	 * @param poly Polynomial (front of linked list) to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @param results Array that receives the value of the polynomial at each of xs - must
+	 *        be at least as long as xs, and may be xs itself
+	 */
+	public static void evaluate(Node poly, double[] xs, double[] results) {
+		checkLength(xs.length, results.length);
+		Terms terms = new Terms(poly);
+		int[] degrees = terms.degrees;
+		double[] coeffs = terms.coeffs;
+		if (degrees.length == 0) {
+			java.util.Arrays.fill(results, 0, xs.length, 0.0);
+			return;
+		}
+		double[] powers = new double[BLOCK];
+		double[] squares = new double[BLOCK];
+		double[] acc = new double[BLOCK];
+		for (int base = 0; base < xs.length; base += BLOCK) {
+			int len = Math.min(BLOCK, xs.length - base);
+			double lead = coeffs[0];
+			for (int p = 0; p < len; p++) {
+				acc[p] = lead;
+			}
+			for (int k = 1; k < degrees.length; k++) {
+				int gap = degrees[k - 1] - degrees[k];
+				double c = coeffs[k];
+				if (gap == 1) {
+					for (int p = 0; p < len; p++) {
+						acc[p] = acc[p] * xs[base + p] + c;
+					}
+				} else {
+					power(xs, base, len, gap, powers, squares);
+					for (int p = 0; p < len; p++) {
+						acc[p] = acc[p] * powers[p] + c;
+					}
+				}
+			}
+			int last = degrees[degrees.length - 1];
+			if (last > 0) {
+				power(xs, base, len, last, powers, squares);
+				for (int p = 0; p < len; p++) {
+					acc[p] *= powers[p];
+				}
+			}
+			System.arraycopy(acc, 0, results, base, len);
+		}
+	}
+
+	/**
+	 * Terms of a polynomial in descending order of degrees, with equal degrees combined
+	 * and zero coefficients left out.
+	 */
+	static class Terms {
+		int[] degrees;
+		double[] coeffs;
+
+		Terms(Node poly) {
+			int n = PolynomialMultiplier.length(poly);
+			int[] ascending = new int[n];
+			float[] ascendingCoeffs = new float[n];
+			PolynomialMultiplier.sortedTerms(poly, ascending, ascendingCoeffs);
+			degrees = new int[n];
+			coeffs = new double[n];
+			int count = 0;
+			for (int i = n - 1; i >= 0; i--) {
+				if (count > 0 && degrees[count - 1] == ascending[i]) {
+					coeffs[count - 1] += ascendingCoeffs[i];
+				} else {
+					if (count > 0 && coeffs[count - 1] == 0) {
+						count--;
+					}
+					degrees[count] = ascending[i];
+					coeffs[count++] = ascendingCoeffs[i];
+				}
+			}
+			if (count > 0 && coeffs[count - 1] == 0) {
+				count--;
+			}
+			degrees = java.util.Arrays.copyOf(degrees, count);
+			coeffs = java.util.Arrays.copyOf(coeffs, count);
+		}
+	}
+
+	/**
+	 * Sets powers[p] to xs[base+p]^exp for p in [0, len), by repeated squaring.
+	 */
+	private static void power(float[] xs, int base, int len, int exp, float[] powers,
+			float[] squares) {
+		for (int p = 0; p < len; p++) {
+			powers[p] = 1;
+			squares[p] = xs[base + p];
+		}
+		while (true) {
+			if ((exp & 1) != 0) {
+				for (int p = 0; p < len; p++) {
+					powers[p] *= squares[p];
+				}
+			}
+			exp >>>= 1;
+			if (exp == 0) {
+				break;
+			}
+			for (int p = 0; p < len; p++) {
+				squares[p] *= squares[p];
+			}
+		}
+	}
+
+	/**
+	 * Sets powers[p] to xs[base+p]^exp for p in [0, len), by repeated squaring.
+	 */
+	private static void power(double[] xs, int base, int len, int exp, double[] powers,
+			double[] squares) {
+		for (int p = 0; p < len; p++) {
+			powers[p] = 1;
+			squares[p] = xs[base + p];
+		}
+		while (true) {
+			if ((exp & 1) != 0) {
+				for (int p = 0; p < len; p++) {
+					powers[p] *= squares[p];
+				}
+			}
+			exp >>>= 1;
+			if (exp == 0) {
+				break;
+			}
+			for (int p = 0; p < len; p++) {
+				squares[p] *= squares[p];
+			}
+		}
+	}
+
+	private static void checkLength(int points, int results) {
+		if (results < points) {
+			throw new IllegalArgumentException("Results array of length " + results
+					+ " cannot hold " + points + " values");
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package poly;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable polynomial in canonical form: terms in ascending order of degrees, equal
+ * degrees combined and zero coefficients left out.
+ *
+ * Instances are hash-consed through <code>intern</code>, so two interned polynomials with
+ * the same terms are the same object and can be compared with <code>==</code>. The intern
+ * table holds its entries weakly, so polynomials no longer referenced anywhere else can
+ * be garbage collected.
+ *
+ * @author runb-cs112
+ *
+ */
+public final class CanonicalPolynomial {
+
+	/**
+	 * The interned zero polynomial
+	 */
+	public static final CanonicalPolynomial ZERO;
+
+	private static final WeakHashMap<CanonicalPolynomial, WeakReference<CanonicalPolynomial>> table =
+			new WeakHashMap<CanonicalPolynomial, WeakReference<CanonicalPolynomial>>();
+
+	static {
+		ZERO = intern(new CanonicalPolynomial(new int[0], new float[0]));
+	}
+
+	private final int[] degrees;
+	private final float[] coeffs;
+	private final int hash;
+
+	private CanonicalPolynomial(int[] degrees, float[] coeffs) {
+		this.degrees = degrees;
+		this.coeffs = coeffs;
+		hash = 31 * Arrays.hashCode(degrees) + Arrays.hashCode(coeffs);
+	}
+
+	/**
+	 * Returns the canonical instance for a polynomial linked list. Terms with equal
+	 * degrees are summed, as <code>Polynomial.add</code> would.
+	 *
+	 * @param poly Polynomial (front of linked list) - not changed
+	 * @return Interned polynomial with the same terms
+	 */
+	public static CanonicalPolynomial intern(Node poly) {
+		int n = PolynomialMultiplier.length(poly);
+		int[] degrees = new int[n];
+		float[] coeffs = new float[n];
+		PolynomialMultiplier.sortedTerms(poly, degrees, coeffs);
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			if (count > 0 && degrees[count - 1] == degrees[i]) {
+				coeffs[count - 1] += coeffs[i];
+			} else {
+				if (count > 0 && coeffs[count - 1] == 0) {
+					count--;
+				}
+				degrees[count] = degrees[i];
+				coeffs[count++] = coeffs[i];
+			}
+		}
+		if (count > 0 && coeffs[count - 1] == 0) {
+			count--;
+		}
+		if (count < n) {
+			degrees = Arrays.copyOf(degrees, count);
+			coeffs = Arrays.copyOf(coeffs, count);
+		}
+		return intern(new CanonicalPolynomial(degrees, coeffs));
+	}
+
+	private static CanonicalPolynomial intern(CanonicalPolynomial poly) {
+		synchronized (table) {
+			WeakReference<CanonicalPolynomial> ref = table.get(poly);
+			CanonicalPolynomial existing = ref == null ? null : ref.get();
+			if (existing != null) {
+				return existing;
+			}
+			table.put(poly, new WeakReference<CanonicalPolynomial>(poly));
+			return poly;
+		}
+	}
+
+	/**
+	 * Returns this polynomial as a new linked list, in ascending order of degrees.
+	 *
+	 * @return The polynomial linked list (front node), or null for the zero polynomial
+	 */
+	public Node toNode() {
+		Node poly = null;
+		for (int i = degrees.length - 1; i >= 0; i--) {
+			poly = new Node(coeffs[i], degrees[i], poly);
+		}
+		return poly;
+	}
+
+	/**
+	 * Tells whether a linked list holds exactly the terms of this polynomial, in the same
+	 * order - that is, whether it is already in canonical form and equal to this one. The
+	 * list is walked once, without allocating.
+	 *
+	 * @param poly Polynomial (front of linked list) - not changed
+	 * @return True if interning the list would give this polynomial without combining or
+	 *         dropping any of its terms
+	 */
+	boolean matches(Node poly) {
+		int i = 0;
+		for (Node ptr = poly; ptr != null; ptr = ptr.next, i++) {
+			if (i == degrees.length || ptr.term.degree != degrees[i]
+					|| Float.floatToIntBits(ptr.term.coeff) != Float.floatToIntBits(coeffs[i])) {
+				return false;
+			}
+		}
+		return i == degrees.length;
+	}
+
+	/**
+	 * @return Number of terms
+	 */
+	public int terms() {
+		return degrees.length;
+	}
+
+	/**
+	 * @return Highest degree, or -1 for the zero polynomial
+	 */
+	public int degree() {
+		return degrees.length == 0 ? -1 : degrees[degrees.length - 1];
+	}
+
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof CanonicalPolynomial)) {
+			return false;
+		}
+		CanonicalPolynomial poly = (CanonicalPolynomial) other;
+		return hash == poly.hash && Arrays.equals(degrees, poly.degrees)
+				&& Arrays.equals(coeffs, poly.coeffs);
+	}
+
+	public int hashCode() {
+		return hash;
+	}
+
+	public String toString() {
+		return Polynomial.toString(toNode());
+	}
+}
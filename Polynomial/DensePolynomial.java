@@ -0,0 +1,202 @@
+package poly;
+
+/**
+ * This class implements evaluate, add and multiply for polynomials stored in dense
+ * form: a <code>double[]</code> in which the entry at index <code>i</code> is the
+ * coefficient of <code>x^i</code>. Entries for missing terms are zero.
+ *
+ * Compared to the <code>Node</code> linked list, a dense polynomial needs no object
+ * per term and is walked sequentially in memory, which pays off when most degrees
+ * up to the highest one are present.
+ *
+ * @author runb-cs112
+ *
+ */
+public class DensePolynomial {
+
+	/**
+	 * The empty (zero) polynomial
+	 */
+	public static final double[] ZERO = new double[0];
+
+	/**
+	 * Converts a polynomial linked list to dense form. Terms with the same degree
+	 * are summed.
+	 *
+	 * @param poly Polynomial (front of linked list)
+	 * @return Dense coefficients, indexed by degree - length is one more than the
+	 *         highest degree in the list, or 0 for the zero polynomial
+	 */
+	public static double[] fromNode(Node poly) {
+		int highest = -1;
+		for (Node p = poly; p != null; p = p.next) {
+			if (p.term.degree < 0) {
+				throw new IllegalArgumentException("Negative degree: " + p.term.degree);
+			}
+			if (p.term.degree > highest) {
+				highest = p.term.degree;
+			}
+		}
+		if (highest < 0) {
+			return ZERO;
+		}
+		double[] coeffs = new double[highest + 1];
+		for (Node p = poly; p != null; p = p.next) {
+			coeffs[p.term.degree] += p.term.coeff;
+		}
+		return coeffs;
+	}
+
+	/**
+	 * Converts a dense polynomial to a linked list, in ascending order of degrees.
+	 * Zero coefficients (including those that become zero when narrowed to float)
+	 * are left out.
+	 *
+	 * @param coeffs Dense coefficients, indexed by degree
+	 * @return The polynomial linked list (front node), or null for the zero polynomial
+	 */
+	public static Node toNode(double[] coeffs) {
+		Node poly = null;
+		for (int i = coeffs.length - 1; i >= 0; i--) {
+			float coeff = (float) coeffs[i];
+			if (coeff != 0) {
+				poly = new Node(coeff, i, poly);
+			}
+		}
+		return poly;
+	}
+
+	/**
+	 * Returns the degree of a dense polynomial, ignoring trailing zero coefficients.
+	 *
+	 * @param coeffs Dense coefficients, indexed by degree
+	 * @return Highest degree with a non-zero coefficient, or -1 for the zero polynomial
+	 */
+	public static int degree(double[] coeffs) {
+		int d = coeffs.length - 1;
+		while (d >= 0 && coeffs[d] == 0) {
+			d--;
+		}
+		return d;
+	}
+
+	/**
+	 * Returns the sum of two dense polynomials - DOES NOT change either input.
+	 *
+	 * @param poly1 First input polynomial
+	 * @param poly2 Second input polynomial
+	 * @return A new array holding the sum, trimmed of trailing zero coefficients
+	 */
+	public static double[] add(double[] poly1, double[] poly2) {
+		if (poly1.length < poly2.length) {
+			double[] tmp = poly1;
+			poly1 = poly2;
+			poly2 = tmp;
+		}
+		int length = poly1.length;
+		while (length > 0 && poly1[length - 1] + (length <= poly2.length ? poly2[length - 1] : 0) == 0) {
+			length--;
+		}
+		if (length == 0) {
+			return ZERO;
+		}
+		double[] sum = new double[length];
+		int common = Math.min(length, poly2.length);
+		for (int i = 0; i < common; i++) {
+			sum[i] = poly1[i] + poly2[i];
+		}
+		System.arraycopy(poly1, common, sum, common, length - common);
+		return sum;
+	}
+
+	/**
+	 * Adds a dense polynomial into another, in place. The target must be long enough to
+	 * hold every degree of the source.
+	 *
+	 * @param target Polynomial that is added to - its entries are overwritten
+	 * @param poly Polynomial to add - not changed
+	 */
+	public static void addInto(double[] target, double[] poly) {
+		int d = degree(poly);
+		if (d >= target.length) {
+			throw new IllegalArgumentException("Target of length " + target.length
+					+ " cannot hold degree " + d);
+		}
+		for (int i = 0; i <= d; i++) {
+			target[i] += poly[i];
+		}
+	}
+
+	/**
+	 * Returns the product of two dense polynomials - DOES NOT change either input.
+	 * Uses the schoolbook method, skipping zero coefficients of the first input.
+	 *
+	 * @param poly1 First input polynomial
+	 * @param poly2 Second input polynomial
+	 * @return A new array holding the product
+	 */
+	public static double[] multiply(double[] poly1, double[] poly2) {
+		int d1 = degree(poly1);
+		int d2 = degree(poly2);
+		if (d1 < 0 || d2 < 0) {
+			return ZERO;
+		}
+		double[] product = new double[d1 + d2 + 1];
+		for (int i = 0; i <= d1; i++) {
+			double c = poly1[i];
+			if (c == 0) {
+				continue;
+			}
+			for (int j = 0; j <= d2; j++) {
+				product[i + j] += c * poly2[j];
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Evaluates a dense polynomial at a given value, using Horner's rule.
+	 *
+	 * @param coeffs Dense coefficients, indexed by degree
+	 * @param x Value at which evaluation is to be done
+	 * @return Value of the polynomial at x
+	 */
+	public static double evaluate(double[] coeffs, double x) {
+		double total = 0;
+		for (int i = coeffs.length - 1; i >= 0; i--) {
+			total = total * x + coeffs[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Returns string representation of a dense polynomial, in the same format as
+	 * <code>Polynomial.toString</code>. Coefficients are narrowed to float first, as in
+	 * <code>toNode</code>, so the result is the same as for the linked list.
+	 *
+	 * @param coeffs Dense coefficients, indexed by degree
+	 * @return String representation, in descending order of degrees
+	 */
+	public static String toString(double[] coeffs) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = coeffs.length - 1; i >= 0; i--) {
+			float coeff = (float) coeffs[i];
+			if (coeff == 0) {
+				continue;
+			}
+			if (sb.length() > 0) {
+				sb.append(" + ");
+			}
+			sb.append(coeff);
+			if (i == 1) {
+				sb.append('x');
+			} else if (i > 1) {
+				sb.append("x^").append(i);
+			}
+		}
+		if (sb.length() == 0) {
+			return "0";
+		}
+		return sb.toString();
+	}
+}
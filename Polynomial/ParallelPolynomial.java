@@ -0,0 +1,384 @@
+package poly;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class implements add and multiply for polynomials, split across the threads
+ * of a <code>ForkJoinPool</code>. Inputs below a size cutoff are handled on the calling
+ * thread.
+ *
+ * Multiply uses the engine that <code>PolynomialMultiplier</code> would pick with
+ * AUTO, and splits its work in the way that engine allows: schoolbook by ranges of
+ * output degrees, Karatsuba by forking the three sub-products of its top levels, and
+ * FFT by splitting every pass of the transform into ranges of butterflies. The sparse
+ * engine merges one heap of partial products, and runs on the calling thread.
+ *
+ * Add splits the output by ranges of degrees. Every value is computed from the same
+ * inputs in the same order as on one thread, so the results are identical term for
+ * term to <code>Polynomial.add</code> and to <code>PolynomialMultiplier.multiply</code>
+ * with the AUTO engine.
+ *
+ * @author runb-cs112
+ *
+ */
+public class ParallelPolynomial {
+
+	/**
+	 * Below this many terms in total, add runs sequentially
+	 */
+	public static final int ADD_CUTOFF = 1 << 16;
+
+	/**
+	 * Below this many pairs of terms, multiply runs sequentially, whichever engine
+	 * <code>PolynomialMultiplier.choose</code> picks
+	 */
+	public static final long MULTIPLY_CUTOFF = 1L << 20;
+
+	/**
+	 * Smallest range of degrees (add), pairs of terms (schoolbook multiply) or loop
+	 * iterations (FFT) handled by one task
+	 */
+	static final int GRAIN = 1 << 14;
+
+	/**
+	 * Largest Karatsuba block multiplied on one thread
+	 */
+	static final int KARATSUBA_GRAIN = 256;
+
+	/**
+	 * Returns the sum of two polynomials, using the common pool.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @return A new polynomial which is the sum of the input polynomials
+	 * @see Polynomial#add(Node, Node)
+	 */
+	public static Node add(Node poly1, Node poly2) {
+		return add(poly1, poly2, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Returns the sum of two polynomials - DOES NOT change either of the input polynomials.
+	 * The returned polynomial has all new nodes, in ascending order of degrees.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @param pool Pool that runs the work
+	 * @return A new polynomial which is the sum of the input polynomials
+	 * @see Polynomial#add(Node, Node)
+	 */
+	public static Node add(Node poly1, Node poly2, ForkJoinPool pool) {
+		int n1 = PolynomialMultiplier.length(poly1);
+		int n2 = PolynomialMultiplier.length(poly2);
+		if (n1 + n2 < ADD_CUTOFF || pool.getParallelism() == 1) {
+			return Polynomial.add(poly1, poly2);
+		}
+		int[] degree1 = new int[n1];
+		float[] coeff1 = new float[n1];
+		int[] degree2 = new int[n2];
+		float[] coeff2 = new float[n2];
+		PolynomialMultiplier.sortedTerms(poly1, degree1, coeff1);
+		PolynomialMultiplier.sortedTerms(poly2, degree2, coeff2);
+
+		// cut the longer input into equal blocks of terms; their first degrees bound the ranges
+		int[] longer = n1 >= n2 ? degree1 : degree2;
+		int parts = Math.max(1, Math.min(pool.getParallelism() * 4, longer.length / GRAIN));
+		long[] bounds = new long[parts + 1];
+		for (int k = 0; k < parts; k++) {
+			bounds[k] = k == 0 ? Long.MIN_VALUE : longer[(int) ((long) k * longer.length / parts)];
+		}
+		bounds[parts] = Long.MAX_VALUE;
+
+		Node[] fronts = new Node[parts];
+		Node[] rears = new Node[parts];
+		pool.invoke(new AddTask(degree1, coeff1, degree2, coeff2, bounds, 0, parts, fronts, rears));
+
+		Node front = null;
+		Node rear = null;
+		for (int k = 0; k < parts; k++) {
+			if (fronts[k] == null) {
+				continue;
+			}
+			if (rear == null) {
+				front = fronts[k];
+			} else {
+				rear.next = fronts[k];
+			}
+			rear = rears[k];
+		}
+		return front;
+	}
+
+	/**
+	 * Returns the product of two polynomials, using the common pool.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @return A new polynomial which is the product of the input polynomials
+	 */
+	public static Node multiply(Node poly1, Node poly2) {
+		return multiply(poly1, poly2, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Returns the product of two polynomials - DOES NOT change either of the input
+	 * polynomials. The returned polynomial has all new nodes, in ascending order of degrees.
+	 * The engine is the one AUTO picks; products of at least
+	 * <code>MULTIPLY_CUTOFF</code> pairs of terms are split across the pool, unless the
+	 * engine is SPARSE.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @param pool Pool that runs the work
+	 * @return A new polynomial which is the product of the input polynomials
+	 */
+	public static Node multiply(Node poly1, Node poly2, ForkJoinPool pool) {
+		if (poly1 == null || poly2 == null) {
+			return null;
+		}
+		PolynomialMultiplier.Engine engine = PolynomialMultiplier.choose(poly1, poly2);
+		int n1 = PolynomialMultiplier.length(poly1);
+		int n2 = PolynomialMultiplier.length(poly2);
+		if ((long) n1 * n2 < MULTIPLY_CUTOFF || pool.getParallelism() == 1
+				|| engine == PolynomialMultiplier.Engine.SPARSE) {
+			return PolynomialMultiplier.multiply(poly1, poly2, engine);
+		}
+		switch (engine) {
+		case KARATSUBA:
+			return DensePolynomial.toNode(PolynomialMultiplier.karatsuba(
+					DensePolynomial.fromNode(poly1), DensePolynomial.fromNode(poly2),
+					(a, aOff, b, bOff, n, out, outOff) ->
+							pool.invoke(new KaratsubaTask(a, aOff, b, bOff, n, out, outOff))));
+		case FFT:
+			return DensePolynomial.toNode(PolynomialMultiplier.fft(
+					DensePolynomial.fromNode(poly1), DensePolynomial.fromNode(poly2), runner(pool)));
+		default:
+			return schoolbook(poly1, n1, poly2, n2, pool);
+		}
+	}
+
+	/**
+	 * Schoolbook multiplication, split by ranges of output degrees
+	 */
+	private static Node schoolbook(Node poly1, int n1, Node poly2, int n2, ForkJoinPool pool) {
+		int[] degree1 = new int[n1];
+		float[] coeff1 = new float[n1];
+		int[] degree2 = new int[n2];
+		float[] coeff2 = new float[n2];
+		PolynomialMultiplier.sortedTerms(poly1, degree1, coeff1);
+		PolynomialMultiplier.sortedTerms(poly2, degree2, coeff2);
+
+		double[] product = new double[degree1[n1 - 1] + degree2[n2 - 1] + 1];
+		int grain = (int) Math.max(1, Math.min(product.length,
+				(long) GRAIN * product.length / ((long) n1 * n2)));
+		grain = Math.max(grain, product.length / (pool.getParallelism() * 16));
+		pool.invoke(new MultiplyTask(degree1, coeff1, degree2, coeff2, product,
+				0, product.length, grain));
+		return DensePolynomial.toNode(product);
+	}
+
+	/**
+	 * Sums the terms whose degrees fall in ranges [bounds[k], bounds[k+1]) for k in
+	 * [from, to), building one linked list per range.
+	 */
+	private static class AddTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int[] degree1, degree2;
+		final float[] coeff1, coeff2;
+		final long[] bounds;
+		final int from, to;
+		final Node[] fronts, rears;
+
+		AddTask(int[] degree1, float[] coeff1, int[] degree2, float[] coeff2, long[] bounds,
+				int from, int to, Node[] fronts, Node[] rears) {
+			this.degree1 = degree1;
+			this.coeff1 = coeff1;
+			this.degree2 = degree2;
+			this.coeff2 = coeff2;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+			this.fronts = fronts;
+			this.rears = rears;
+		}
+
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new AddTask(degree1, coeff1, degree2, coeff2, bounds, from, mid, fronts, rears),
+						new AddTask(degree1, coeff1, degree2, coeff2, bounds, mid, to, fronts, rears));
+				return;
+			}
+			int i = lowerBound(degree1, bounds[from]);
+			int end1 = lowerBound(degree1, bounds[from + 1]);
+			int j = lowerBound(degree2, bounds[from]);
+			int end2 = lowerBound(degree2, bounds[from + 1]);
+			Node front = new Node(0, 0, null);
+			Node rear = front;
+			while (i < end1 || j < end2) {
+				float coeff;
+				int degree;
+				if (j == end2 || (i < end1 && degree1[i] < degree2[j])) {
+					degree = degree1[i];
+					coeff = coeff1[i++];
+				} else if (i == end1 || degree2[j] < degree1[i]) {
+					degree = degree2[j];
+					coeff = coeff2[j++];
+				} else {
+					degree = degree1[i];
+					coeff = coeff1[i++] + coeff2[j++];
+				}
+				if (coeff != 0) {
+					rear.next = new Node(coeff, degree, null);
+					rear = rear.next;
+				}
+			}
+			fronts[from] = front.next;
+			rears[from] = rear == front ? null : rear;
+		}
+	}
+
+	/**
+	 * Computes product[lo..hi) - each output degree sums its pairs of terms in ascending
+	 * order of the first polynomial's terms, as the schoolbook engine does.
+	 */
+	private static class MultiplyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int[] degree1, degree2;
+		final float[] coeff1, coeff2;
+		final double[] product;
+		final int lo, hi, grain;
+
+		MultiplyTask(int[] degree1, float[] coeff1, int[] degree2, float[] coeff2,
+				double[] product, int lo, int hi, int grain) {
+			this.degree1 = degree1;
+			this.coeff1 = coeff1;
+			this.degree2 = degree2;
+			this.coeff2 = coeff2;
+			this.product = product;
+			this.lo = lo;
+			this.hi = hi;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (hi - lo > grain) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new MultiplyTask(degree1, coeff1, degree2, coeff2, product, lo, mid, grain),
+						new MultiplyTask(degree1, coeff1, degree2, coeff2, product, mid, hi, grain));
+				return;
+			}
+			for (int i = 0; i < degree1.length; i++) {
+				int d = degree1[i];
+				if (d >= hi) {
+					break;
+				}
+				double c = coeff1[i];
+				int end = lowerBound(degree2, (long) hi - d);
+				for (int j = lowerBound(degree2, (long) lo - d); j < end; j++) {
+					product[d + degree2[j]] += c * coeff2[j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a runner that splits loops of more than GRAIN iterations across the pool.
+	 */
+	private static PolynomialMultiplier.Runner runner(ForkJoinPool pool) {
+		return (count, loop) -> {
+			if (count <= GRAIN) {
+				loop.run(0, count);
+			} else {
+				pool.invoke(new LoopTask(loop, 0, count));
+			}
+		};
+	}
+
+	/**
+	 * Runs the iterations [lo, hi) of a loop of independent iterations
+	 */
+	private static class LoopTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final PolynomialMultiplier.Loop loop;
+		final int lo, hi;
+
+		LoopTask(PolynomialMultiplier.Loop loop, int lo, int hi) {
+			this.loop = loop;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo > GRAIN) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new LoopTask(loop, lo, mid), new LoopTask(loop, mid, hi));
+				return;
+			}
+			loop.run(lo, hi);
+		}
+	}
+
+	/**
+	 * Adds the product of a[aOff..aOff+n) and b[bOff..bOff+n) into out, starting at
+	 * outOff, with the three sub-products of each Karatsuba step computed in parallel.
+	 * Each goes into an array of its own, and they are combined in the same order as on
+	 * one thread, so the sums are the same.
+	 */
+	private static class KaratsubaTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final double[] a, b, out;
+		final int aOff, bOff, n, outOff;
+
+		KaratsubaTask(double[] a, int aOff, double[] b, int bOff, int n, double[] out,
+				int outOff) {
+			this.a = a;
+			this.aOff = aOff;
+			this.b = b;
+			this.bOff = bOff;
+			this.n = n;
+			this.out = out;
+			this.outOff = outOff;
+		}
+
+		protected void compute() {
+			if (n <= KARATSUBA_GRAIN) {
+				PolynomialMultiplier.karatsuba(a, aOff, b, bOff, n, out, outOff);
+				return;
+			}
+			int lo = n / 2;
+			int hi = n - lo;
+			double[] low = new double[2 * lo - 1];
+			double[] high = new double[2 * hi - 1];
+			double[] mid = new double[2 * hi - 1];
+			double[] sumA = new double[hi];
+			double[] sumB = new double[hi];
+			PolynomialMultiplier.karatsubaSums(a, aOff, b, bOff, lo, sumA, sumB);
+			invokeAll(new KaratsubaTask(a, aOff, b, bOff, lo, low, 0),
+					new KaratsubaTask(a, aOff + lo, b, bOff + lo, hi, high, 0),
+					new KaratsubaTask(sumA, 0, sumB, 0, hi, mid, 0));
+			PolynomialMultiplier.karatsubaCombine(low, high, mid, lo, out, outOff);
+		}
+	}
+
+	/**
+	 * Returns the index of the first degree that is at least the key.
+	 */
+	private static int lowerBound(int[] degrees, long key) {
+		int lo = 0, hi = degrees.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (degrees[mid] < key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -11,6 +11,29 @@ import java.util.Scanner;
  */
 public class Polynomial {
 	
+	/**
+	 * Cache that add and multiply go through, or null for none
+	 */
+	private static volatile PolynomialCache cache;
+	
+	/**
+	 * Routes add and multiply through a cache of results, or stops doing so.
+	 * 
+	 * @param cache Cache to use, or null to compute every result
+	 */
+	public static void setCache(PolynomialCache cache) {
+		Polynomial.cache = cache;
+	}
+	
+	/**
+	 * Returns the cache that add and multiply go through.
+	 * 
+	 * @return The cache, or null if there is none
+	 */
+	public static PolynomialCache getCache() {
+		return cache;
+	}
+	
 	/**
 	 * Reads a polynomial from an input stream (file or keyboard). The storage format
 	 * of the polynomial is:
@@ -59,65 +82,53 @@ public class Polynomial {
 	 *         is the front of the result polynomial
 	 */
 	public static Node add(Node poly1, Node poly2) {
+		PolynomialCache c = cache;
+		if (c != null) {
+			return c.add(poly1, poly2);
+		}
+		return merge(poly1, poly2);
+	}
+	
+	/**
+	 * Merges two polynomials in ascending order of degrees into a new one, summing terms
+	 * of equal degrees - the uncached part of add.
+	 */
+	static Node merge(Node poly1, Node poly2) {
 		Node ptr1 = poly1;
 		Node ptr2 = poly2;
-		Node total = new Node(0, 0, null);
-		Node finalResult = total;
-		
+		Node front = new Node(0, 0, null);
+		Node total = front;
 		
 		while (ptr1 != null || ptr2 != null) {
-
-			if (ptr2 != null && ptr1 != null) {
-				
-				if (ptr1.term.degree > ptr2.term.degree) {
-					total.term.degree = ptr2.term.degree;
-					total.term.coeff = ptr2.term.coeff;
-					ptr2 = ptr2.next;
-				} 
-				
-				else if (ptr2.term.degree > ptr1.term.degree) {
-					total.term.degree = ptr1.term.degree;
-					total.term.coeff = ptr1.term.coeff;
-					ptr1 = ptr1.next;
-				} 
-				
-				else {
-					total.term.coeff = ptr1.term.coeff + ptr2.term.coeff;
-					total.term.degree = ptr1.term.degree;
-					ptr1 = ptr1.next;
-					ptr2 = ptr2.next;
-				}
-				
-				if (total.term.coeff != 0) {
-					total.next = new Node(0, 0, null);
-					total = total.next;
-				}
-			} 
+			float coeff;
+			int degree;
 			
-			else if (ptr1 != null && ptr2 == null) {
-				total.term.degree = ptr1.term.degree;
-				total.term.coeff = ptr1.term.coeff;
+			if (ptr2 == null || (ptr1 != null && ptr1.term.degree < ptr2.term.degree)) {
+				degree = ptr1.term.degree;
+				coeff = ptr1.term.coeff;
 				ptr1 = ptr1.next;
 			} 
 			
-			else if (ptr2 != null && ptr1 == null) {
-				total.term.degree = ptr2.term.degree;
-				total.term.coeff = ptr2.term.coeff;
+			else if (ptr1 == null || ptr2.term.degree < ptr1.term.degree) {
+				degree = ptr2.term.degree;
+				coeff = ptr2.term.coeff;
+				ptr2 = ptr2.next;
+			} 
+			
+			else {
+				degree = ptr1.term.degree;
+				coeff = ptr1.term.coeff + ptr2.term.coeff;
+				ptr1 = ptr1.next;
 				ptr2 = ptr2.next;
 			}
 			
-			if (ptr1 == null && ptr2 == null) {
-				break;
+			if (coeff != 0) {
+				total.next = new Node(coeff, degree, null);
+				total = total.next;
 			}
 		}
 		
-		if (finalResult.next == null) { 
-			if (finalResult.term.coeff == 0) {
-				finalResult = null;
-			}	
-		}
-		
-		return finalResult;
+		return front.next;
 	}
 	
 	
@@ -130,31 +141,14 @@ public class Polynomial {
 	 * @param poly2 Second input polynomial (front of polynomial linked list)
 	 * @return A new polynomial which is the product of the input polynomials - the returned node
 	 *         is the front of the result polynomial
+	 * @see PolynomialMultiplier#multiply(Node, Node, PolynomialMultiplier.Engine)
 	 */
 	public static Node multiply(Node poly1, Node poly2) {
-		Node ptr1;
-		Node ptr2;
-		
-		for (ptr1 = poly1; ptr1.next != null; ptr1 = ptr1.next);
-		for (ptr2 = poly2; ptr2.next != null; ptr2 = ptr2.next);
-		Node result = null;
-		
-		int highestDegreePossible = ptr1.term.degree + ptr2.term.degree;
-		for (int i = highestDegreePossible; i >= 0; i--) {
-			float sum = 0;
-			
-			for (ptr1 = poly1; ptr1 != null; ptr1 = ptr1.next) {
-				for (ptr2 = poly2; ptr2 != null; ptr2 = ptr2.next) {
-					if (ptr1.term.degree + ptr2.term.degree == i) {
-						sum += ptr1.term.coeff * ptr2.term.coeff;
-					}
-				}
-			}
-			if (sum != 0) {
-				result = new Node(sum, i, result);
-			}
+		PolynomialCache c = cache;
+		if (c != null) {
+			return c.multiply(poly1, poly2);
 		}
-		return result;
+		return PolynomialMultiplier.multiply(poly1, poly2);
 	}
 	
 	
@@ -181,15 +175,6 @@ public class Polynomial {
 	 * @return String representation, in descending order of degrees
 	 */
 	public static String toString(Node poly) {
-		if (poly == null) {
-			return "0";
-		} 
-		
-		String retval = poly.term.toString();
-		for (Node current = poly.next ; current != null ;
-		current = current.next) {
-			retval = current.term.toString() + " + " + retval;
-		}
-		return retval;
+		return PolynomialWriter.append(new StringBuilder(), poly).toString();
 	}	
 }
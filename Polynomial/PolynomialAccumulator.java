@@ -0,0 +1,144 @@
+package poly;
+
+/**
+ * Sums any number of polynomials into a reusable dense buffer. Adding a polynomial
+ * allocates nothing (unless the buffer has to grow to a higher degree), and a linked
+ * list is built only when <code>toNode</code> is called.
+ *
+ * The buffer keeps its storage across <code>reset</code> calls, so one accumulator can
+ * be used for many sums in a loop. Sums are kept in double precision.
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialAccumulator {
+
+	/**
+	 * Running sum, indexed by degree
+	 */
+	private double[] coeffs;
+
+	/**
+	 * Lowest and highest degrees touched since the last reset - low > high when none
+	 */
+	private int low, high;
+
+	/**
+	 * Initializes this accumulator to the zero polynomial
+	 */
+	public PolynomialAccumulator() {
+		this(16);
+	}
+
+	/**
+	 * Initializes this accumulator to the zero polynomial, with room for degrees up to
+	 * the given one before the buffer has to grow
+	 *
+	 * @param degree Highest degree expected
+	 */
+	public PolynomialAccumulator(int degree) {
+		coeffs = new double[Math.max(degree + 1, 1)];
+		low = Integer.MAX_VALUE;
+		high = -1;
+	}
+
+	/**
+	 * Adds a polynomial to the running sum. The polynomial is not changed.
+	 *
+	 * @param poly Polynomial to add (front of linked list)
+	 * @return This accumulator
+	 */
+	public PolynomialAccumulator add(Node poly) {
+		for (Node p = poly; p != null; p = p.next) {
+			int degree = p.term.degree;
+			ensureDegree(degree);
+			coeffs[degree] += p.term.coeff;
+			if (degree < low) {
+				low = degree;
+			}
+			if (degree > high) {
+				high = degree;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a dense polynomial to the running sum. The polynomial is not changed.
+	 *
+	 * @param poly Polynomial to add, indexed by degree
+	 * @return This accumulator
+	 */
+	public PolynomialAccumulator add(double[] poly) {
+		int degree = DensePolynomial.degree(poly);
+		if (degree < 0) {
+			return this;
+		}
+		ensureDegree(degree);
+		int first = 0;
+		while (poly[first] == 0) {
+			first++;
+		}
+		for (int i = first; i <= degree; i++) {
+			coeffs[i] += poly[i];
+		}
+		low = Math.min(low, first);
+		high = Math.max(high, degree);
+		return this;
+	}
+
+	/**
+	 * Returns the running sum as a new linked list, in ascending order of degrees.
+	 * The accumulator is not changed.
+	 *
+	 * @return The polynomial linked list (front node), or null for the zero polynomial
+	 */
+	public Node toNode() {
+		Node poly = null;
+		for (int i = high; i >= low; i--) {
+			float coeff = (float) coeffs[i];
+			if (coeff != 0) {
+				poly = new Node(coeff, i, poly);
+			}
+		}
+		return poly;
+	}
+
+	/**
+	 * Returns the running sum as a new dense array. The accumulator is not changed.
+	 *
+	 * @return Dense coefficients, indexed by degree, with no trailing zero coefficients
+	 */
+	public double[] toDense() {
+		int degree = high;
+		while (degree >= low && coeffs[degree] == 0) {
+			degree--;
+		}
+		if (degree < low) {
+			return DensePolynomial.ZERO;
+		}
+		return java.util.Arrays.copyOf(coeffs, degree + 1);
+	}
+
+	/**
+	 * Resets the running sum to the zero polynomial, keeping the buffer for reuse.
+	 * Only the degrees touched since the last reset are cleared.
+	 */
+	public void reset() {
+		if (low <= high) {
+			java.util.Arrays.fill(coeffs, low, high + 1, 0);
+		}
+		low = Integer.MAX_VALUE;
+		high = -1;
+	}
+
+	private void ensureDegree(int degree) {
+		if (degree < 0) {
+			throw new IllegalArgumentException("Negative degree: " + degree);
+		}
+		if (degree >= coeffs.length) {
+			coeffs = java.util.Arrays.copyOf(coeffs,
+					(int) Math.min(Integer.MAX_VALUE - 8, Math.max(degree + 1L, 2L * coeffs.length)));
+		}
+	}
+}
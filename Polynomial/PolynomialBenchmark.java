@@ -0,0 +1,75 @@
+package poly;
+
+import java.util.Random;
+
+/**
+ * Times compiled evaluators against <code>Polynomial.evaluate</code>. Run with
+ * <pre>
+ *     java poly.PolynomialBenchmark [terms] [points]
+ * </pre>
+ * Each measurement is repeated after a warm-up, so the JIT has compiled both paths.
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Keeps results alive, so the JIT cannot drop the work being timed
+	 */
+	static float sink;
+
+	public static void main(String[] args) {
+		int points = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int[] sizes = args.length > 0
+				? new int[] { Integer.parseInt(args[0]) }
+				: new int[] { 4, 16, PolynomialCompiler.MAX_TREE_TERMS, 256 };
+		Random random = new Random(112);
+		float[] xs = new float[points];
+		for (int i = 0; i < points; i++) {
+			xs[i] = random.nextFloat() * 2 - 1;
+		}
+		System.out.printf("%8s %18s %18s %8s%n", "terms", "evaluate ns/call", "compiled ns/call",
+				"speedup");
+		for (int terms : sizes) {
+			Node poly = null;
+			for (int degree = terms - 1; degree >= 0; degree--) {
+				poly = new Node(random.nextFloat() * 2 - 1, degree, poly);
+			}
+			PolynomialCompiler.Evaluator compiled = PolynomialCompiler.compile(poly);
+			double interpreted = time(poly, null, xs);
+			double generated = time(null, compiled, xs);
+			System.out.printf("%8d %18.2f %18.2f %7.1fx%n", terms, interpreted, generated,
+					interpreted / generated);
+		}
+	}
+
+	/**
+	 * Returns the best time per evaluation, in nanoseconds, over several rounds.
+	 */
+	private static double time(Node poly, PolynomialCompiler.Evaluator compiled, float[] xs) {
+		double best = Double.MAX_VALUE;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			long start = System.nanoTime();
+			float total = 0;
+			if (compiled != null) {
+				for (float x : xs) {
+					total += compiled.evaluate(x);
+				}
+			} else {
+				for (float x : xs) {
+					total += Polynomial.evaluate(poly, x);
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			sink += total;
+			if (round >= WARMUP_ROUNDS) {
+				best = Math.min(best, (double) elapsed / xs.length);
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,310 @@
+package poly;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe cache of the results of add, multiply and evaluate, keyed by
+ * the identity of canonical (interned) operands.
+ *
+ * Because <code>CanonicalPolynomial</code> instances are hash-consed, equal operands are
+ * the same object, and a lookup costs a few identity comparisons however large the
+ * polynomials are. Linked list operands are first looked up by identity among the lists
+ * seen recently, and interned only on a miss: interning copies, sorts and hashes every
+ * term, while a hit only walks the list once to confirm it still has the terms it had,
+ * since lists may be changed between calls. Results come back as new linked lists, so
+ * callers may change them freely.
+ *
+ * Install a cache with <code>Polynomial.setCache</code> to route
+ * <code>Polynomial.add</code> and <code>Polynomial.multiply</code> through it.
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialCache {
+
+	/**
+	 * Which entry makes room when the cache is full
+	 */
+	public enum Eviction {
+		/**
+		 * The least recently used entry
+		 */
+		LRU,
+
+		/**
+		 * The oldest entry, regardless of use - lookups do not reorder entries
+		 */
+		FIFO
+	}
+
+	private static final int ADD = 0, MULTIPLY = 1, EVALUATE = 2;
+
+	/**
+	 * Key of a cached result: an operation and its operands, compared by identity
+	 */
+	private static class Key {
+		final int op;
+		final CanonicalPolynomial left, right;
+		final int x;
+
+		Key(int op, CanonicalPolynomial left, CanonicalPolynomial right, int x) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+			this.x = x;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return op == key.op && left == key.left && right == key.right && x == key.x;
+		}
+
+		public int hashCode() {
+			int h = op;
+			h = 31 * h + System.identityHashCode(left);
+			h = 31 * h + System.identityHashCode(right);
+			return 31 * h + x;
+		}
+	}
+
+	private final int capacity;
+	private final Eviction eviction;
+	private final LinkedHashMap<Key, Object> entries;
+
+	/**
+	 * Canonical forms of linked lists recently passed in, keyed by the identity of their
+	 * front nodes. Only lists already in canonical form are kept, and the map is cleared
+	 * when it grows past the capacity.
+	 */
+	private final IdentityHashMap<Node, CanonicalPolynomial> canonical =
+			new IdentityHashMap<Node, CanonicalPolynomial>();
+	private long hits, misses, evictions;
+
+	/**
+	 * Initializes an empty LRU cache
+	 *
+	 * @param capacity Largest number of results kept
+	 */
+	public PolynomialCache(int capacity) {
+		this(capacity, Eviction.LRU);
+	}
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param capacity Largest number of results kept
+	 * @param eviction Which entry makes room when the cache is full
+	 */
+	public PolynomialCache(int capacity, Eviction eviction) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.eviction = eviction;
+		entries = new LinkedHashMap<Key, Object>(16, 0.75f, eviction == Eviction.LRU) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+				if (size() > PolynomialCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the sum of two canonical polynomials, from the cache if present.
+	 *
+	 * @param poly1 First input polynomial
+	 * @param poly2 Second input polynomial
+	 * @return Canonical sum
+	 */
+	public CanonicalPolynomial add(CanonicalPolynomial poly1, CanonicalPolynomial poly2) {
+		Key key = new Key(ADD, poly1, poly2, 0);
+		CanonicalPolynomial result = (CanonicalPolynomial) lookup(key);
+		if (result == null) {
+			result = CanonicalPolynomial.intern(Polynomial.merge(poly1.toNode(), poly2.toNode()));
+			store(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the product of two canonical polynomials, from the cache if present.
+	 *
+	 * @param poly1 First input polynomial
+	 * @param poly2 Second input polynomial
+	 * @return Canonical product
+	 */
+	public CanonicalPolynomial multiply(CanonicalPolynomial poly1, CanonicalPolynomial poly2) {
+		Key key = new Key(MULTIPLY, poly1, poly2, 0);
+		CanonicalPolynomial result = (CanonicalPolynomial) lookup(key);
+		if (result == null) {
+			result = CanonicalPolynomial.intern(
+					PolynomialMultiplier.multiply(poly1.toNode(), poly2.toNode()));
+			store(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates a canonical polynomial, from the cache if present.
+	 *
+	 * @param poly Polynomial to be evaluated
+	 * @param x Value at which evaluation is to be done
+	 * @return Value of poly at x, as <code>Polynomial.evaluate</code> computes it
+	 */
+	public float evaluate(CanonicalPolynomial poly, float x) {
+		Key key = new Key(EVALUATE, poly, null, Float.floatToIntBits(x));
+		Float result = (Float) lookup(key);
+		if (result == null) {
+			result = Polynomial.evaluate(poly.toNode(), x);
+			store(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the sum of two polynomials as a new linked list.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @return A new polynomial which is the sum of the input polynomials
+	 */
+	public Node add(Node poly1, Node poly2) {
+		return add(canonical(poly1), canonical(poly2)).toNode();
+	}
+
+	/**
+	 * Returns the product of two polynomials as a new linked list.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @return A new polynomial which is the product of the input polynomials
+	 */
+	public Node multiply(Node poly1, Node poly2) {
+		return multiply(canonical(poly1), canonical(poly2)).toNode();
+	}
+
+	/**
+	 * Evaluates a polynomial.
+	 *
+	 * @param poly Polynomial (front of linked list) to be evaluated
+	 * @param x Value at which evaluation is to be done
+	 * @return Value of poly at x
+	 */
+	public float evaluate(Node poly, float x) {
+		return evaluate(canonical(poly), x);
+	}
+
+	/**
+	 * Returns the canonical form of a linked list, found by the identity of its front node
+	 * if the list was seen recently and has not changed since, or else interned.
+	 */
+	private CanonicalPolynomial canonical(Node poly) {
+		if (poly == null) {
+			return CanonicalPolynomial.ZERO;
+		}
+		CanonicalPolynomial result;
+		synchronized (this) {
+			result = canonical.get(poly);
+		}
+		if (result != null && result.matches(poly)) {
+			return result;
+		}
+		result = CanonicalPolynomial.intern(poly);
+		if (result.matches(poly)) {
+			synchronized (this) {
+				if (canonical.size() >= capacity) {
+					canonical.clear();
+				}
+				canonical.put(poly, result);
+			}
+		}
+		return result;
+	}
+
+	private synchronized Object lookup(Key key) {
+		Object result = entries.get(key);
+		if (result != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return result;
+	}
+
+	private synchronized void store(Key key, Object result) {
+		entries.put(key, result);
+	}
+
+	/**
+	 * Removes every entry. Counters are not reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		canonical.clear();
+	}
+
+	/**
+	 * @return Number of entries currently held
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return Largest number of entries held
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return Eviction policy
+	 */
+	public Eviction getEviction() {
+		return eviction;
+	}
+
+	/**
+	 * @return Number of lookups that found a result
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return Number of lookups that had to compute the result
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return Number of entries dropped to make room
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @return Fraction of lookups that found a result, or 0 if there were none
+	 */
+	public synchronized double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public synchronized String toString() {
+		return "PolynomialCache[" + eviction + ", size=" + entries.size() + "/" + capacity
+				+ ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+}
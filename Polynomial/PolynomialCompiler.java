@@ -0,0 +1,187 @@
+package poly;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * This class compiles a polynomial into an evaluator for repeated evaluation.
+ *
+ * Polynomials with up to <code>MAX_TREE_TERMS</code> terms become a tree of method
+ * handles, one Horner step per term, with the coefficients and degree gaps bound in
+ * as constants. Once an evaluator is hot, the JVM customizes the tree for that
+ * instance and the JIT inlines it into straight-line code with the constants folded.
+ * Longer polynomials get a Horner loop over primitive arrays instead, since a very
+ * deep handle tree would exceed the JIT's inlining limits.
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialCompiler {
+
+	/**
+	 * Evaluates one compiled polynomial
+	 */
+	public interface Evaluator {
+		/**
+		 * Evaluates the compiled polynomial at a given value.
+		 *
+		 * @param x Value at which evaluation is to be done
+		 * @return Value of the polynomial at x
+		 */
+		float evaluate(float x);
+	}
+
+	/**
+	 * Largest number of terms compiled to a method handle tree
+	 */
+	public static final int MAX_TREE_TERMS = 64;
+
+	private static final MethodHandle STEP;
+	private static final MethodHandle STEP_GAP;
+	private static final MethodHandle SCALE;
+	private static final MethodHandle TO_FLOAT;
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType step = MethodType.methodType(double.class, double.class, double.class,
+				double.class);
+		MethodType stepGap = MethodType.methodType(double.class, double.class, double.class,
+				double.class, int.class);
+		try {
+			STEP = lookup.findStatic(PolynomialCompiler.class, "step", step);
+			STEP_GAP = lookup.findStatic(PolynomialCompiler.class, "step", stepGap);
+			SCALE = lookup.findStatic(PolynomialCompiler.class, "scale",
+					MethodType.methodType(double.class, double.class, double.class, int.class));
+			TO_FLOAT = lookup.findStatic(PolynomialCompiler.class, "toFloat",
+					MethodType.methodType(float.class, double.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Compiles a polynomial. The polynomial is copied, so later changes to its nodes do
+	 * not affect the evaluator.
+	 *
+	 * @param poly Polynomial (front of linked list)
+	 * @return Evaluator for the polynomial
+	 */
+	public static Evaluator compile(Node poly) {
+		BatchEvaluator.Terms terms = new BatchEvaluator.Terms(poly);
+		if (terms.degrees.length <= MAX_TREE_TERMS) {
+			return new TreeEvaluator(tree(terms.degrees, terms.coeffs));
+		}
+		return new LoopEvaluator(terms.degrees, terms.coeffs);
+	}
+
+	/**
+	 * Builds a (float)float handle that runs Horner's rule over the given terms, which
+	 * are in descending order of degrees.
+	 */
+	static MethodHandle tree(int[] degrees, double[] coeffs) {
+		MethodHandle h;
+		if (degrees.length == 0) {
+			h = MethodHandles.dropArguments(MethodHandles.constant(double.class, 0.0), 0,
+					double.class);
+		} else {
+			h = MethodHandles.dropArguments(MethodHandles.constant(double.class, coeffs[0]), 0,
+					double.class);
+			for (int k = 1; k < degrees.length; k++) {
+				int gap = degrees[k - 1] - degrees[k];
+				MethodHandle step = gap == 1
+						? MethodHandles.insertArguments(STEP, 2, coeffs[k])
+						: MethodHandles.insertArguments(STEP_GAP, 2, coeffs[k], gap);
+				// (x) -> step(h(x), x)
+				h = MethodHandles.foldArguments(step, h);
+			}
+			int last = degrees[degrees.length - 1];
+			if (last > 0) {
+				h = MethodHandles.foldArguments(MethodHandles.insertArguments(SCALE, 2, last), h);
+			}
+		}
+		h = MethodHandles.filterReturnValue(h, TO_FLOAT);
+		return h.asType(MethodType.methodType(float.class, float.class));
+	}
+
+	private static double step(double acc, double x, double coeff) {
+		return acc * x + coeff;
+	}
+
+	private static double step(double acc, double x, double coeff, int gap) {
+		return scale(acc, x, gap) + coeff;
+	}
+
+	private static double scale(double acc, double x, int exp) {
+		double square = x;
+		while (exp > 0) {
+			if ((exp & 1) != 0) {
+				acc *= square;
+			}
+			square *= square;
+			exp >>>= 1;
+		}
+		return acc;
+	}
+
+	private static float toFloat(double value) {
+		return (float) value;
+	}
+
+	/**
+	 * Evaluator backed by a method handle tree
+	 */
+	private static class TreeEvaluator implements Evaluator {
+		private final MethodHandle handle;
+
+		TreeEvaluator(MethodHandle handle) {
+			this.handle = handle;
+		}
+
+		public float evaluate(float x) {
+			try {
+				return (float) handle.invokeExact(x);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+	}
+
+	/**
+	 * Evaluator backed by a Horner loop over the terms
+	 */
+	private static class LoopEvaluator implements Evaluator {
+		private final int[] gaps;
+		private final double[] coeffs;
+		private final int last;
+		private final boolean dense;
+
+		LoopEvaluator(int[] degrees, double[] coeffs) {
+			this.coeffs = coeffs;
+			gaps = new int[degrees.length];
+			boolean dense = true;
+			for (int k = 1; k < degrees.length; k++) {
+				gaps[k] = degrees[k - 1] - degrees[k];
+				dense &= gaps[k] == 1;
+			}
+			this.dense = dense;
+			last = degrees[degrees.length - 1];
+		}
+
+		public float evaluate(float x) {
+			double acc = coeffs[0];
+			if (dense) {
+				for (int k = 1; k < coeffs.length; k++) {
+					acc = acc * x + coeffs[k];
+				}
+			} else {
+				for (int k = 1; k < coeffs.length; k++) {
+					acc = (gaps[k] == 1 ? acc * x : scale(acc, x, gaps[k])) + coeffs[k];
+				}
+			}
+			return (float) scale(acc, x, last);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package poly;
+
+import java.io.IOException;
+
+/**
+ * Thrown when polynomial input is not made of <code>&lt;coeff&gt; &lt;degree&gt;</code> lines.
+ * Carries the byte offset and line number at which the input went wrong.
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialFormatException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Byte offset, from the start of the input, of the offending character
+	 */
+	private final long offset;
+
+	/**
+	 * Line number (first line is 1) of the offending character
+	 */
+	private final long line;
+
+	/**
+	 * Initializes this exception with a description of the problem and where it was found
+	 *
+	 * @param message What was wrong
+	 * @param offset Byte offset of the offending character
+	 * @param line Line number of the offending character, first line is 1
+	 */
+	public PolynomialFormatException(String message, long offset, long line) {
+		super(message + " at byte offset " + offset + " (line " + line + ")");
+		this.offset = offset;
+		this.line = line;
+	}
+
+	/**
+	 * @return Byte offset, from the start of the input, of the offending character
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return Line number (first line is 1) of the offending character
+	 */
+	public long getLine() {
+		return line;
+	}
+}
@@ -0,0 +1,701 @@
+package poly;
+
+/**
+ * This class implements polynomial multiplication engines for large inputs. The
+ * engine is picked by the size and density of the inputs, or can be forced by the
+ * caller (for instance when benchmarking).
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialMultiplier {
+
+	/**
+	 * Multiplication engines
+	 */
+	public enum Engine {
+		/**
+		 * Picks one of the other engines from the size and density of the inputs
+		 */
+		AUTO,
+
+		/**
+		 * Multiplies every pair of terms - O(n*m), best for small or sparse inputs
+		 */
+		SCHOOLBOOK,
+
+		/**
+		 * k-way heap merge of the partial products - O(n*m log min(n,m)), independent of
+		 * the degrees, best for few terms with very high degrees
+		 */
+		SPARSE,
+
+		/**
+		 * Karatsuba divide and conquer on dense coefficients - O(n^1.585)
+		 */
+		KARATSUBA,
+
+		/**
+		 * Floating point FFT on dense coefficients - O(n log n), with rounding error
+		 */
+		FFT,
+
+		/**
+		 * Number theoretic transform - O(n log n), exact for integer coefficients
+		 * whose product coefficients lie strictly between -MODULUS/2 and MODULUS/2
+		 */
+		NTT
+	}
+
+	/**
+	 * Prime modulus used by the NTT engine: 119 * 2^23 + 1
+	 */
+	public static final long MODULUS = 998244353L;
+
+	/**
+	 * Primitive root of MODULUS
+	 */
+	private static final long ROOT = 3;
+
+	/**
+	 * Largest transform length supported by MODULUS
+	 */
+	private static final int MAX_NTT_LENGTH = 1 << 23;
+
+	/**
+	 * Below this many terms in the smaller input, schoolbook beats the other engines
+	 */
+	static final int SCHOOLBOOK_CUTOFF = 64;
+
+	/**
+	 * Below this output length, Karatsuba beats FFT
+	 */
+	static final int FFT_CUTOFF = 4096;
+
+	/**
+	 * Fraction of degrees that must be present for an input to count as dense
+	 */
+	static final double DENSITY_CUTOFF = 0.25;
+
+	/**
+	 * Runs the iterations [from, to) of a loop whose iterations are independent
+	 */
+	interface Loop {
+		void run(int from, int to);
+	}
+
+	/**
+	 * Runs all the iterations of a loop, on the calling thread or split across threads.
+	 * Iterations are independent, so the results are the same either way.
+	 */
+	interface Runner {
+		void run(int count, Loop loop);
+	}
+
+	/**
+	 * Runs a loop on the calling thread
+	 */
+	static final Runner SEQUENTIAL = (count, loop) -> loop.run(0, count);
+
+	/**
+	 * Adds the product of a[aOff..aOff+n) and b[bOff..bOff+n) into out, starting at outOff
+	 */
+	interface BlockMultiplier {
+		void multiply(double[] a, int aOff, double[] b, int bOff, int n, double[] out, int outOff);
+	}
+
+	/**
+	 * Returns the product of two polynomials, with the engine picked automatically.
+	 * DOES NOT change either of the input polynomials, and the result has all new nodes.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @return A new polynomial which is the product of the input polynomials, in
+	 *         ascending order of degrees
+	 */
+	public static Node multiply(Node poly1, Node poly2) {
+		return multiply(poly1, poly2, Engine.AUTO);
+	}
+
+	/**
+	 * Returns the product of two polynomials, using the given engine.
+	 * DOES NOT change either of the input polynomials, and the result has all new nodes.
+	 *
+	 * @param poly1 First input polynomial (front of polynomial linked list)
+	 * @param poly2 Second input polynomial (front of polynomial linked list)
+	 * @param engine Engine to use, or AUTO to pick one
+	 * @return A new polynomial which is the product of the input polynomials, in
+	 *         ascending order of degrees
+	 * @throws IllegalArgumentException If NTT is forced on non-integer coefficients
+	 */
+	public static Node multiply(Node poly1, Node poly2, Engine engine) {
+		if (poly1 == null || poly2 == null) {
+			return null;
+		}
+		if (engine == Engine.AUTO) {
+			engine = choose(poly1, poly2);
+		}
+		switch (engine) {
+		case SCHOOLBOOK:
+			return DensePolynomial.toNode(schoolbook(poly1, poly2));
+		case SPARSE:
+			return sparse(poly1, poly2);
+		case KARATSUBA:
+			return DensePolynomial.toNode(karatsuba(DensePolynomial.fromNode(poly1),
+					DensePolynomial.fromNode(poly2)));
+		case FFT:
+			return DensePolynomial.toNode(fft(DensePolynomial.fromNode(poly1),
+					DensePolynomial.fromNode(poly2)));
+		case NTT:
+			return nttMultiply(poly1, poly2);
+		default:
+			throw new IllegalArgumentException("Unknown engine: " + engine);
+		}
+	}
+
+	/**
+	 * Picks the engine for a pair of polynomials from their term counts and degrees.
+	 *
+	 * @param poly1 First input polynomial (non-null)
+	 * @param poly2 Second input polynomial (non-null)
+	 * @return Engine that AUTO resolves to for these inputs
+	 */
+	public static Engine choose(Node poly1, Node poly2) {
+		int terms1 = 0, terms2 = 0, degree1 = 0, degree2 = 0;
+		for (Node p = poly1; p != null; p = p.next) {
+			terms1++;
+			degree1 = Math.max(degree1, p.term.degree);
+		}
+		for (Node p = poly2; p != null; p = p.next) {
+			terms2++;
+			degree2 = Math.max(degree2, p.term.degree);
+		}
+		int smaller = Math.min(terms1, terms2);
+		double pairs = (double) terms1 * terms2;
+		double span = (double) degree1 + degree2 + 1;
+		if (span > pairs * (32 - Integer.numberOfLeadingZeros(smaller))) {
+			return Engine.SPARSE;
+		}
+		if (smaller < SCHOOLBOOK_CUTOFF) {
+			return Engine.SCHOOLBOOK;
+		}
+		double density = (double) (terms1 + terms2) / ((double) degree1 + degree2 + 2);
+		if (density < DENSITY_CUTOFF) {
+			return Engine.SCHOOLBOOK;
+		}
+		if ((long) degree1 + degree2 + 1 < FFT_CUTOFF) {
+			return Engine.KARATSUBA;
+		}
+		return Engine.FFT;
+	}
+
+	/**
+	 * Multiplies every pair of terms, accumulating into a dense buffer.
+	 */
+	private static double[] schoolbook(Node poly1, Node poly2) {
+		int degree1 = 0, degree2 = 0;
+		for (Node p = poly1; p != null; p = p.next) {
+			degree1 = Math.max(degree1, p.term.degree);
+		}
+		for (Node p = poly2; p != null; p = p.next) {
+			degree2 = Math.max(degree2, p.term.degree);
+		}
+		double[] product = new double[degree1 + degree2 + 1];
+		for (Node p1 = poly1; p1 != null; p1 = p1.next) {
+			double c = p1.term.coeff;
+			int d = p1.term.degree;
+			for (Node p2 = poly2; p2 != null; p2 = p2.next) {
+				product[d + p2.term.degree] += c * p2.term.coeff;
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Multiplies two sparse polynomials by merging the partial products. Every term of
+	 * the shorter polynomial starts a stream that walks the longer one in ascending
+	 * order of degrees; a min-heap over the stream heads yields the products in
+	 * ascending order of degrees, and equal degrees are combined as they come out.
+	 *
+	 * @throws ArithmeticException If the degree of the product does not fit in an int
+	 */
+	private static Node sparse(Node poly1, Node poly2) {
+		int n1 = length(poly1);
+		int n2 = length(poly2);
+		if (n1 > n2) {
+			Node tmp = poly1;
+			poly1 = poly2;
+			poly2 = tmp;
+			int n = n1;
+			n1 = n2;
+			n2 = n;
+		}
+		int[] degree1 = new int[n1];
+		float[] coeff1 = new float[n1];
+		int[] degree2 = new int[n2];
+		float[] coeff2 = new float[n2];
+		sortedTerms(poly1, degree1, coeff1);
+		sortedTerms(poly2, degree2, coeff2);
+		// every key below is at most the highest degree, so checking it covers them all
+		long maxDegree = (long) degree1[n1 - 1] + degree2[n2 - 1];
+		if (maxDegree > Integer.MAX_VALUE) {
+			throw new ArithmeticException("Degree of product " + maxDegree + " exceeds "
+					+ Integer.MAX_VALUE);
+		}
+
+		// stream heads; the initial keys ascend with the stream, which is already a heap
+		int[] heap = new int[n1];
+		int[] key = new int[n1];
+		int[] position = new int[n1];
+		for (int i = 0; i < n1; i++) {
+			heap[i] = i;
+			key[i] = degree1[i] + degree2[0];
+		}
+		int size = n1;
+
+		Node front = new Node(0, 0, null);
+		Node rear = front;
+		int degree = key[0];
+		double sum = 0;
+		while (size > 0) {
+			int stream = heap[0];
+			if (key[0] != degree) {
+				if ((float) sum != 0) {
+					rear.next = new Node((float) sum, degree, null);
+					rear = rear.next;
+				}
+				degree = key[0];
+				sum = 0;
+			}
+			sum += (double) coeff1[stream] * coeff2[position[stream]];
+			if (++position[stream] < n2) {
+				key[0] = degree1[stream] + degree2[position[stream]];
+			} else {
+				size--;
+				heap[0] = heap[size];
+				key[0] = key[size];
+			}
+			siftDown(heap, key, size);
+		}
+		if ((float) sum != 0) {
+			rear.next = new Node((float) sum, degree, null);
+		}
+		return front.next;
+	}
+
+	private static void siftDown(int[] heap, int[] key, int size) {
+		int i = 0;
+		int stream = heap[0];
+		int k = key[0];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && key[child + 1] < key[child]) {
+				child++;
+			}
+			if (key[child] >= k) {
+				break;
+			}
+			heap[i] = heap[child];
+			key[i] = key[child];
+			i = child;
+		}
+		heap[i] = stream;
+		key[i] = k;
+	}
+
+	static int length(Node poly) {
+		int n = 0;
+		for (Node p = poly; p != null; p = p.next) {
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Copies the terms of a polynomial into arrays, in ascending order of degrees.
+	 */
+	static void sortedTerms(Node poly, int[] degree, float[] coeff) {
+		boolean sorted = true;
+		int i = 0;
+		for (Node p = poly; p != null; p = p.next, i++) {
+			degree[i] = p.term.degree;
+			coeff[i] = p.term.coeff;
+			if (i > 0 && degree[i] < degree[i - 1]) {
+				sorted = false;
+			}
+		}
+		if (sorted) {
+			return;
+		}
+		long[] order = new long[degree.length];
+		for (i = 0; i < order.length; i++) {
+			order[i] = ((long) degree[i] << 32) | i;
+		}
+		java.util.Arrays.sort(order);
+		float[] copy = coeff.clone();
+		for (i = 0; i < order.length; i++) {
+			degree[i] = (int) (order[i] >> 32);
+			coeff[i] = copy[(int) order[i]];
+		}
+	}
+
+	/**
+	 * Returns the product of two dense polynomials using Karatsuba multiplication.
+	 * The longer input is cut into blocks the length of the shorter one, so unbalanced
+	 * inputs do not pay for padding.
+	 *
+	 * @param poly1 First input polynomial, dense
+	 * @param poly2 Second input polynomial, dense
+	 * @return A new array holding the product
+	 */
+	public static double[] karatsuba(double[] poly1, double[] poly2) {
+		return karatsuba(poly1, poly2, PolynomialMultiplier::karatsuba);
+	}
+
+	/**
+	 * Karatsuba multiplication, with the product of each block of the longer input
+	 * computed by the given multiplier.
+	 */
+	static double[] karatsuba(double[] poly1, double[] poly2, BlockMultiplier multiplier) {
+		int length1 = DensePolynomial.degree(poly1) + 1;
+		int length2 = DensePolynomial.degree(poly2) + 1;
+		if (length1 == 0 || length2 == 0) {
+			return DensePolynomial.ZERO;
+		}
+		if (length1 < length2) {
+			double[] tmp = poly1;
+			poly1 = poly2;
+			poly2 = tmp;
+			int len = length1;
+			length1 = length2;
+			length2 = len;
+		}
+		int blocks = (length1 + length2 - 1) / length2;
+		double[] work = new double[blocks * length2 + length2 - 1];
+		double[] block = poly1;
+		for (int off = 0; off < length1; off += length2) {
+			int aOff = off;
+			if (off + length2 > poly1.length) {
+				block = new double[length2];
+				System.arraycopy(poly1, off, block, 0, length1 - off);
+				aOff = 0;
+			}
+			multiplier.multiply(block, aOff, poly2, 0, length2, work, off);
+		}
+		double[] product = new double[length1 + length2 - 1];
+		System.arraycopy(work, 0, product, 0, product.length);
+		return product;
+	}
+
+	/**
+	 * Adds the product of a[aOff..aOff+n) and b[bOff..bOff+n) into out, starting at outOff.
+	 */
+	static void karatsuba(double[] a, int aOff, double[] b, int bOff, int n,
+			double[] out, int outOff) {
+		if (n <= SCHOOLBOOK_CUTOFF) {
+			for (int i = 0; i < n; i++) {
+				double c = a[aOff + i];
+				if (c == 0) {
+					continue;
+				}
+				for (int j = 0; j < n; j++) {
+					out[outOff + i + j] += c * b[bOff + j];
+				}
+			}
+			return;
+		}
+		int lo = n / 2;
+		int hi = n - lo;
+		double[] low = new double[2 * lo - 1];
+		double[] high = new double[2 * hi - 1];
+		double[] mid = new double[2 * hi - 1];
+		karatsuba(a, aOff, b, bOff, lo, low, 0);
+		karatsuba(a, aOff + lo, b, bOff + lo, hi, high, 0);
+		double[] sumA = new double[hi];
+		double[] sumB = new double[hi];
+		karatsubaSums(a, aOff, b, bOff, lo, sumA, sumB);
+		karatsuba(sumA, 0, sumB, 0, hi, mid, 0);
+		karatsubaCombine(low, high, mid, lo, out, outOff);
+	}
+
+	/**
+	 * Sums the low and high halves of each input, the high halves being the longer.
+	 */
+	static void karatsubaSums(double[] a, int aOff, double[] b, int bOff, int lo,
+			double[] sumA, double[] sumB) {
+		int hi = sumA.length;
+		for (int i = 0; i < hi; i++) {
+			sumA[i] = a[aOff + lo + i];
+			sumB[i] = b[bOff + lo + i];
+		}
+		for (int i = 0; i < lo; i++) {
+			sumA[i] += a[aOff + i];
+			sumB[i] += b[bOff + i];
+		}
+	}
+
+	/**
+	 * Adds the three partial products of one Karatsuba step into out, starting at outOff.
+	 */
+	static void karatsubaCombine(double[] low, double[] high, double[] mid, int lo,
+			double[] out, int outOff) {
+		for (int i = 0; i < low.length; i++) {
+			out[outOff + i] += low[i];
+			mid[i] -= low[i];
+		}
+		for (int i = 0; i < high.length; i++) {
+			out[outOff + 2 * lo + i] += high[i];
+			mid[i] -= high[i];
+		}
+		for (int i = 0; i < mid.length; i++) {
+			out[outOff + lo + i] += mid[i];
+		}
+	}
+
+	/**
+	 * Returns the product of two dense polynomials using a floating point FFT.
+	 * Coefficients that are within rounding error of zero are set to zero.
+	 *
+	 * @param poly1 First input polynomial, dense
+	 * @param poly2 Second input polynomial, dense
+	 * @return A new array holding the product
+	 */
+	public static double[] fft(double[] poly1, double[] poly2) {
+		return fft(poly1, poly2, SEQUENTIAL);
+	}
+
+	/**
+	 * FFT multiplication, with the loops over the transform run by the given runner.
+	 */
+	static double[] fft(double[] poly1, double[] poly2, Runner runner) {
+		int length1 = DensePolynomial.degree(poly1) + 1;
+		int length2 = DensePolynomial.degree(poly2) + 1;
+		if (length1 == 0 || length2 == 0) {
+			return DensePolynomial.ZERO;
+		}
+		int length = length1 + length2 - 1;
+		int n = transformLength(length);
+
+		// pack both inputs into one complex signal, transform once, then separate
+		double[] re = new double[n];
+		double[] im = new double[n];
+		System.arraycopy(poly1, 0, re, 0, length1);
+		System.arraycopy(poly2, 0, im, 0, length2);
+		fft(re, im, false, runner);
+
+		double[] productRe = new double[n];
+		double[] productIm = new double[n];
+		runner.run(n, (from, to) -> {
+			for (int k = from; k < to; k++) {
+				int j = (n - k) & (n - 1);
+				double aRe = (re[k] + re[j]) / 2;
+				double aIm = (im[k] - im[j]) / 2;
+				double bRe = (im[k] + im[j]) / 2;
+				double bIm = (re[j] - re[k]) / 2;
+				productRe[k] = aRe * bRe - aIm * bIm;
+				productIm[k] = aRe * bIm + aIm * bRe;
+			}
+		});
+		fft(productRe, productIm, true, runner);
+
+		double max1 = 0, max2 = 0;
+		for (int i = 0; i < length1; i++) {
+			max1 = Math.max(max1, Math.abs(poly1[i]));
+		}
+		for (int i = 0; i < length2; i++) {
+			max2 = Math.max(max2, Math.abs(poly2[i]));
+		}
+		double tolerance = 1e-12 * max1 * max2 * Math.min(length1, length2);
+		double[] product = new double[length];
+		runner.run(length, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				double c = productRe[i] / n;
+				product[i] = Math.abs(c) <= tolerance ? 0 : c;
+			}
+		});
+		return product;
+	}
+
+	/**
+	 * In-place iterative radix-2 FFT. The length must be a power of 2. The inverse
+	 * transform is not scaled by 1/n. Each stage is a loop over its n/2 butterflies,
+	 * which touch disjoint pairs of elements.
+	 */
+	private static void fft(double[] re, double[] im, boolean inverse, Runner runner) {
+		int n = re.length;
+		if (n == 1) {
+			return;
+		}
+		int shift = Integer.numberOfLeadingZeros(n) + 1;
+		runner.run(n, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				int j = Integer.reverse(i) >>> shift;
+				if (i < j) {
+					double t = re[i];
+					re[i] = re[j];
+					re[j] = t;
+					t = im[i];
+					im[i] = im[j];
+					im[j] = t;
+				}
+			}
+		});
+		double[] cos = new double[n / 2];
+		double[] sin = new double[n / 2];
+		runner.run(n / 2, (from, to) -> {
+			for (int k = from; k < to; k++) {
+				double angle = 2 * Math.PI * k / n;
+				cos[k] = Math.cos(angle);
+				sin[k] = inverse ? Math.sin(angle) : -Math.sin(angle);
+			}
+		});
+		for (int size = 2; size <= n; size <<= 1) {
+			int half = size >> 1;
+			int step = n / size;
+			runner.run(n / 2, (from, to) -> {
+				for (int t = from; t < to; t++) {
+					int j = t & (half - 1);
+					int u = ((t - j) << 1) + j;
+					int v = u + half;
+					double wRe = cos[j * step];
+					double wIm = sin[j * step];
+					double tRe = re[v] * wRe - im[v] * wIm;
+					double tIm = re[v] * wIm + im[v] * wRe;
+					re[v] = re[u] - tRe;
+					im[v] = im[u] - tIm;
+					re[u] += tRe;
+					im[u] += tIm;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the product of two polynomials with coefficients taken modulo MODULUS,
+	 * using the number theoretic transform. The result is exact modulo MODULUS.
+	 *
+	 * @param poly1 First input polynomial, dense, coefficients are reduced modulo MODULUS
+	 * @param poly2 Second input polynomial, dense, coefficients are reduced modulo MODULUS
+	 * @return A new array holding the product, every entry in [0, MODULUS)
+	 * @throws IllegalArgumentException If the product is too long for MODULUS
+	 */
+	public static long[] multiplyMod(long[] poly1, long[] poly2) {
+		if (poly1.length == 0 || poly2.length == 0) {
+			return new long[0];
+		}
+		int length = poly1.length + poly2.length - 1;
+		int n = transformLength(length);
+		if (n > MAX_NTT_LENGTH) {
+			throw new IllegalArgumentException("Product of length " + length
+					+ " is too long for the NTT modulus");
+		}
+		long[] a = new long[n];
+		long[] b = new long[n];
+		for (int i = 0; i < poly1.length; i++) {
+			a[i] = Math.floorMod(poly1[i], MODULUS);
+		}
+		for (int i = 0; i < poly2.length; i++) {
+			b[i] = Math.floorMod(poly2[i], MODULUS);
+		}
+		ntt(a, false);
+		ntt(b, false);
+		for (int i = 0; i < n; i++) {
+			a[i] = a[i] * b[i] % MODULUS;
+		}
+		ntt(a, true);
+		long scale = power(n, MODULUS - 2);
+		long[] product = new long[length];
+		for (int i = 0; i < length; i++) {
+			product[i] = a[i] * scale % MODULUS;
+		}
+		return product;
+	}
+
+	/**
+	 * NTT engine for linked lists: coefficients must be whole numbers, and results are
+	 * mapped back to the signed range around zero.
+	 */
+	private static Node nttMultiply(Node poly1, Node poly2) {
+		long[] a = toIntegral(DensePolynomial.fromNode(poly1));
+		long[] b = toIntegral(DensePolynomial.fromNode(poly2));
+		long[] product = multiplyMod(a, b);
+		Node result = null;
+		for (int i = product.length - 1; i >= 0; i--) {
+			long c = product[i] > MODULUS / 2 ? product[i] - MODULUS : product[i];
+			if (c != 0) {
+				result = new Node(c, i, result);
+			}
+		}
+		return result;
+	}
+
+	private static long[] toIntegral(double[] coeffs) {
+		long[] integral = new long[coeffs.length];
+		for (int i = 0; i < coeffs.length; i++) {
+			if (coeffs[i] != Math.rint(coeffs[i])) {
+				throw new IllegalArgumentException("NTT needs whole number coefficients, found "
+						+ coeffs[i] + " at degree " + i);
+			}
+			integral[i] = (long) coeffs[i];
+		}
+		return integral;
+	}
+
+	/**
+	 * In-place iterative NTT modulo MODULUS. The length must be a power of 2. The
+	 * inverse transform is not scaled by 1/n.
+	 */
+	private static void ntt(long[] a, boolean inverse) {
+		int n = a.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				long t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+		}
+		for (int size = 2; size <= n; size <<= 1) {
+			long w = power(ROOT, (MODULUS - 1) / size);
+			if (inverse) {
+				w = power(w, MODULUS - 2);
+			}
+			int half = size >> 1;
+			for (int start = 0; start < n; start += size) {
+				long wk = 1;
+				for (int j = 0; j < half; j++) {
+					long u = a[start + j];
+					long v = a[start + j + half] * wk % MODULUS;
+					a[start + j] = u + v < MODULUS ? u + v : u + v - MODULUS;
+					a[start + j + half] = u - v >= 0 ? u - v : u - v + MODULUS;
+					wk = wk * w % MODULUS;
+				}
+			}
+		}
+	}
+
+	private static long power(long base, long exp) {
+		long result = 1;
+		base %= MODULUS;
+		while (exp > 0) {
+			if ((exp & 1) != 0) {
+				result = result * base % MODULUS;
+			}
+			base = base * base % MODULUS;
+			exp >>= 1;
+		}
+		return result;
+	}
+
+	private static int transformLength(int length) {
+		int n = Integer.highestOneBit(length);
+		return n < length ? n << 1 : n;
+	}
+}
@@ -0,0 +1,332 @@
+package poly;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads polynomials from files in the same format as
+ * <code>Polynomial.read</code>, one <code>&lt;coeff&gt; &lt;degree&gt;</code> pair per line.
+ *
+ * The file is memory mapped a window at a time and parsed byte by byte, so no String,
+ * Scanner or other object is created per line. Blank lines are skipped, and any other
+ * line that is not a coefficient followed by a degree is reported with a
+ * {@link PolynomialFormatException} giving its byte offset.
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialReader {
+
+	/**
+	 * Receives the terms of a polynomial, in the order they appear in the input
+	 */
+	public interface TermHandler {
+		/**
+		 * Called once per term
+		 *
+		 * @param coeff Coefficient of the term
+		 * @param degree Degree of the term
+		 */
+		void term(float coeff, int degree);
+	}
+
+	/**
+	 * Largest part of the file mapped at a time - also the longest line accepted
+	 */
+	static final int WINDOW = 64 << 20;
+
+	/**
+	 * Powers of ten that are exactly representable as doubles
+	 */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private MappedByteBuffer buf;
+	private int pos;
+	private int limit;
+	private long base;
+	private long line;
+	private boolean nonNegative;
+
+	private PolynomialReader() {
+	}
+
+	/**
+	 * Reads a polynomial from a file. Like <code>Polynomial.read</code>, each term read
+	 * is put in front of the ones before it, so a file in descending order of degrees
+	 * gives a list in ascending order.
+	 *
+	 * @param file File to read
+	 * @return The polynomial linked list (front node) constructed from the file
+	 * @throws IOException If the file cannot be read or is malformed
+	 */
+	public static Node read(Path file) throws IOException {
+		final Node front = new Node(0, 0, null);
+		read(file, new TermHandler() {
+			public void term(float coeff, int degree) {
+				front.next = new Node(coeff, degree, front.next);
+			}
+		});
+		return front.next;
+	}
+
+	/**
+	 * Reads a polynomial from a file into dense form. Terms with the same degree are summed.
+	 *
+	 * @param file File to read
+	 * @return Dense coefficients, indexed by degree
+	 * @throws IOException If the file cannot be read or is malformed, including a
+	 *         {@link PolynomialFormatException} for a negative degree
+	 */
+	public static double[] readDense(Path file) throws IOException {
+		final double[][] coeffs = { new double[16] };
+		final int[] length = { 0 };
+		read(file, new TermHandler() {
+			public void term(float coeff, int degree) {
+				if (degree >= coeffs[0].length) {
+					coeffs[0] = java.util.Arrays.copyOf(coeffs[0],
+							Math.max(degree + 1, 2 * coeffs[0].length));
+				}
+				coeffs[0][degree] += coeff;
+				length[0] = Math.max(length[0], degree + 1);
+			}
+		}, true);
+		if (length[0] == 0) {
+			return DensePolynomial.ZERO;
+		}
+		return java.util.Arrays.copyOf(coeffs[0], length[0]);
+	}
+
+	/**
+	 * Reads the terms of a polynomial from a file, handing each one to a handler.
+	 *
+	 * @param file File to read
+	 * @param handler Receives every term, in file order
+	 * @throws IOException If the file cannot be read or is malformed
+	 */
+	public static void read(Path file, TermHandler handler) throws IOException {
+		read(file, handler, false);
+	}
+
+	private static void read(Path file, TermHandler handler, boolean nonNegative)
+			throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			read(channel, handler, nonNegative);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the terms of a polynomial from the current position of a file channel to its
+	 * end, handing each one to a handler. Byte offsets in errors are relative to the
+	 * starting position.
+	 *
+	 * @param channel Channel to read - it is not closed
+	 * @param handler Receives every term, in file order
+	 * @throws IOException If the channel cannot be read or its contents are malformed
+	 */
+	public static void read(FileChannel channel, TermHandler handler) throws IOException {
+		read(channel, handler, false);
+	}
+
+	/**
+	 * Reads the terms from a channel, rejecting negative degrees if asked to, so that
+	 * they are reported with their position like any other malformed line.
+	 */
+	private static void read(FileChannel channel, TermHandler handler, boolean nonNegative)
+			throws IOException {
+		PolynomialReader reader = new PolynomialReader();
+		reader.line = 1;
+		reader.nonNegative = nonNegative;
+		long start = channel.position();
+		long size = channel.size();
+		long position = start;
+		while (position < size) {
+			long length = Math.min(WINDOW, size - position);
+			boolean last = position + length == size;
+			reader.buf = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			reader.base = position - start;
+			reader.limit = (int) length;
+			int consumed = reader.parseLines(handler, last);
+			if (consumed == 0) {
+				throw new PolynomialFormatException("Line longer than " + WINDOW + " bytes",
+						reader.base, reader.line);
+			}
+			position += consumed;
+		}
+		channel.position(size);
+	}
+
+	/**
+	 * Parses every complete line in the mapped window. A line cut off by the end of the
+	 * window is left for the next window, unless this is the last one.
+	 *
+	 * @return Number of bytes consumed
+	 */
+	private int parseLines(TermHandler handler, boolean last) throws PolynomialFormatException {
+		int lineStart = 0;
+		pos = 0;
+		while (pos < limit) {
+			if (!last && !hasLineEnd(pos)) {
+				return lineStart;
+			}
+			skipBlanks();
+			if (pos == limit || atLineEnd()) {
+				skipLineEnd();
+				lineStart = pos;
+				continue;
+			}
+			float coeff = parseCoeff();
+			if (pos == limit || !isBlank(buf.get(pos))) {
+				throw error("Expected blank after coefficient");
+			}
+			skipBlanks();
+			int degreeStart = pos;
+			int degree = parseDegree();
+			if (degree < 0 && nonNegative) {
+				pos = degreeStart;
+				throw error("Negative degree " + degree);
+			}
+			skipBlanks();
+			if (pos < limit && !atLineEnd()) {
+				throw error("Unexpected character after degree");
+			}
+			handler.term(coeff, degree);
+			skipLineEnd();
+			lineStart = pos;
+		}
+		return limit;
+	}
+
+	private boolean hasLineEnd(int from) {
+		for (int i = from; i < limit; i++) {
+			byte b = buf.get(i);
+			if (b == '\n' || b == '\r') {
+				// a \r at the very end may be the first half of a \r\n split across windows
+				return b == '\n' || i + 1 < limit;
+			}
+		}
+		return false;
+	}
+
+	private float parseCoeff() throws PolynomialFormatException {
+		boolean negative = false;
+		byte b = buf.get(pos);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		for (; pos < limit && isDigit(b = buf.get(pos)); pos++) {
+			seenDigit = true;
+			if (digits < 18) {
+				mantissa = mantissa * 10 + (b - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+			} else {
+				exponent++;
+			}
+		}
+		if (pos < limit && buf.get(pos) == '.') {
+			pos++;
+			for (; pos < limit && isDigit(b = buf.get(pos)); pos++) {
+				seenDigit = true;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					exponent--;
+					if (mantissa != 0) {
+						digits++;
+					}
+				}
+			}
+		}
+		if (!seenDigit) {
+			throw error("Expected coefficient");
+		}
+		if (pos < limit && ((b = buf.get(pos)) == 'e' || b == 'E')) {
+			pos++;
+			exponent += parseInt("Expected exponent");
+		}
+		double value = mantissa;
+		if (exponent < 0 && exponent >= -22) {
+			value /= POWERS_OF_TEN[-exponent];
+		} else if (exponent > 0 && exponent <= 22) {
+			value *= POWERS_OF_TEN[exponent];
+		} else if (exponent != 0) {
+			value *= Math.pow(10, exponent);
+		}
+		return (float) (negative ? -value : value);
+	}
+
+	private int parseDegree() throws PolynomialFormatException {
+		return parseInt("Expected degree");
+	}
+
+	private int parseInt(String expected) throws PolynomialFormatException {
+		boolean negative = false;
+		byte b;
+		if (pos < limit && ((b = buf.get(pos)) == '-' || b == '+')) {
+			negative = b == '-';
+			pos++;
+		}
+		if (pos == limit || !isDigit(buf.get(pos))) {
+			throw error(expected);
+		}
+		long value = 0;
+		for (; pos < limit && isDigit(b = buf.get(pos)); pos++) {
+			value = value * 10 + (b - '0');
+			if (value > Integer.MAX_VALUE + 1L) {
+				throw error("Number out of range");
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw error("Number out of range");
+		}
+		return (int) value;
+	}
+
+	private void skipBlanks() {
+		while (pos < limit && isBlank(buf.get(pos))) {
+			pos++;
+		}
+	}
+
+	private boolean atLineEnd() {
+		byte b = buf.get(pos);
+		return b == '\n' || b == '\r';
+	}
+
+	private void skipLineEnd() {
+		if (pos < limit && buf.get(pos) == '\r') {
+			pos++;
+		}
+		if (pos < limit && buf.get(pos) == '\n') {
+			pos++;
+		}
+		line++;
+	}
+
+	private PolynomialFormatException error(String message) {
+		return new PolynomialFormatException(message, base + pos, line);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t' || b == '\f';
+	}
+}
@@ -0,0 +1,158 @@
+package poly;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * This class writes polynomials as text, in the format of <code>Polynomial.toString</code>:
+ * terms in descending order of degrees, separated by <code>" + "</code>, and
+ * <code>"0"</code> for the zero polynomial.
+ *
+ * Output is streamed term by term into the target, so the time taken is linear in the
+ * number of terms and no String is built for the whole polynomial or any term.
+ *
+ * @author runb-cs112
+ *
+ */
+public class PolynomialWriter {
+
+	/**
+	 * Number of characters collected before they are handed to a target that is not a
+	 * StringBuilder
+	 */
+	static final int CHUNK = 8192;
+
+	/**
+	 * Receives chunks of formatted output
+	 */
+	private interface Sink {
+		void write(StringBuilder chunk) throws IOException;
+	}
+
+	/**
+	 * Appends a polynomial to a StringBuilder.
+	 *
+	 * @param sb Target
+	 * @param poly Polynomial (front of linked list)
+	 * @return The target
+	 */
+	public static StringBuilder append(StringBuilder sb, Node poly) {
+		Node[] terms = descending(poly);
+		if (terms.length == 0) {
+			return sb.append('0');
+		}
+		for (int i = 0; i < terms.length; i++) {
+			if (i > 0) {
+				sb.append(" + ");
+			}
+			appendTerm(sb, terms[i].term);
+		}
+		return sb;
+	}
+
+	/**
+	 * Writes a polynomial to an Appendable.
+	 *
+	 * @param poly Polynomial (front of linked list)
+	 * @param out Target
+	 * @throws IOException If the target throws it
+	 */
+	public static void write(Node poly, final Appendable out) throws IOException {
+		if (out instanceof StringBuilder) {
+			append((StringBuilder) out, poly);
+		} else if (out instanceof Writer) {
+			write(poly, (Writer) out);
+		} else {
+			write(poly, new Sink() {
+				public void write(StringBuilder chunk) throws IOException {
+					out.append(chunk);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes a polynomial to a Writer. The writer is neither flushed nor closed.
+	 *
+	 * @param poly Polynomial (front of linked list)
+	 * @param out Target
+	 * @throws IOException If the target throws it
+	 */
+	public static void write(Node poly, final Writer out) throws IOException {
+		final char[] chars = new char[CHUNK + 64];
+		write(poly, new Sink() {
+			public void write(StringBuilder chunk) throws IOException {
+				chunk.getChars(0, chunk.length(), chars, 0);
+				out.write(chars, 0, chunk.length());
+			}
+		});
+	}
+
+	/**
+	 * Writes a polynomial to a ByteBuffer as ASCII, starting at its position.
+	 *
+	 * @param poly Polynomial (front of linked list)
+	 * @param out Target - its position is advanced past the output
+	 * @throws java.nio.BufferOverflowException If the buffer runs out of room
+	 */
+	public static void write(Node poly, final ByteBuffer out) {
+		try {
+			write(poly, new Sink() {
+				public void write(StringBuilder chunk) {
+					for (int i = 0; i < chunk.length(); i++) {
+						out.put((byte) chunk.charAt(i));
+					}
+				}
+			});
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void write(Node poly, Sink sink) throws IOException {
+		Node[] terms = descending(poly);
+		StringBuilder chunk = new StringBuilder(CHUNK + 64);
+		if (terms.length == 0) {
+			chunk.append('0');
+		}
+		for (int i = 0; i < terms.length; i++) {
+			if (i > 0) {
+				chunk.append(" + ");
+			}
+			appendTerm(chunk, terms[i].term);
+			if (chunk.length() >= CHUNK) {
+				sink.write(chunk);
+				chunk.setLength(0);
+			}
+		}
+		if (chunk.length() > 0) {
+			sink.write(chunk);
+		}
+	}
+
+	/**
+	 * Appends a term in the format of <code>Term.toString</code>.
+	 */
+	private static void appendTerm(StringBuilder sb, Term term) {
+		sb.append(term.coeff);
+		if (term.degree == 1) {
+			sb.append('x');
+		} else if (term.degree != 0) {
+			sb.append("x^").append(term.degree);
+		}
+	}
+
+	/**
+	 * Returns the nodes of a list in reverse order, which is descending order of degrees
+	 * for a list in ascending order.
+	 */
+	private static Node[] descending(Node poly) {
+		Node[] terms = new Node[PolynomialMultiplier.length(poly)];
+		int i = terms.length;
+		for (Node p = poly; p != null; p = p.next) {
+			terms[--i] = p;
+		}
+		return terms;
+	}
+}